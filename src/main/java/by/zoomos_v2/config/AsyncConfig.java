@@ -1,6 +1,7 @@
 package by.zoomos_v2.config;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
@@ -44,4 +45,44 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * Отдельный пул для фоновых задач экспорта, чтобы экспорт не занимал потоки Tomcat
+     * и не конкурировал с обработкой загруженных файлов
+     */
+    @Bean(name = "exportExecutor")
+    public Executor exportExecutor() {
+        log.info("Инициализация пула потоков для экспорта");
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(50);
+        executor.setThreadNamePrefix("export-");
+
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * Общий пул упреждающего чтения файлов выгрузки. Каждый поток держит транзакцию
+     * и соединение с БД, поэтому размер пула ограничен отдельно от пулов экспорта.
+     * При заполненной очереди следующий файл читается в потоке выгрузки без упреждения
+     */
+    @Bean(name = "exportReadExecutor")
+    public ThreadPoolTaskExecutor exportReadExecutor(@Value("${app.export.read-threads:2}") int readThreads) {
+        log.info("Инициализация пула потоков для чтения данных экспорта: {}", readThreads);
+
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(readThreads);
+        executor.setMaxPoolSize(readThreads);
+        executor.setQueueCapacity(readThreads * 2);
+        executor.setThreadNamePrefix("export-read-");
+
+        executor.initialize();
+        return executor;
+    }
 }
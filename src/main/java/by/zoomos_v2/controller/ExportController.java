@@ -5,13 +5,18 @@ import by.zoomos_v2.aspect.LogExecution;
 import by.zoomos_v2.model.Client;
 import by.zoomos_v2.model.ExportConfig;
 import by.zoomos_v2.model.ExportField;
-import by.zoomos_v2.model.ExportResult;
+import by.zoomos_v2.model.enums.OperationStatus;
 import by.zoomos_v2.model.operation.ExportOperation;
 import by.zoomos_v2.service.client.ClientService;
+import by.zoomos_v2.service.file.export.exporter.CSVDataExporter;
+import by.zoomos_v2.service.file.export.exporter.ExportCompression;
+import by.zoomos_v2.service.file.export.exporter.ExportSplitPolicy;
+import by.zoomos_v2.service.file.export.service.ExportCacheService;
+import by.zoomos_v2.service.file.export.service.ExportJobService;
 import by.zoomos_v2.service.file.export.service.FileExportService;
 import by.zoomos_v2.service.file.export.service.ProcessingStrategyService;
-import by.zoomos_v2.service.file.export.strategy.DataProcessingStrategy;
 import by.zoomos_v2.service.file.export.strategy.ProcessingStrategyType;
+import by.zoomos_v2.service.file.export.strategy.StrategyChain;
 import by.zoomos_v2.service.file.export.strategy.StrategyManager;
 import by.zoomos_v2.service.file.export.strategy.StrategyParameterDescriptor;
 import by.zoomos_v2.service.file.metadata.FileMetadataService;
@@ -22,17 +27,24 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.mvc.support.RedirectAttributes;
 
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -46,6 +58,8 @@ import java.util.stream.Collectors;
 public class ExportController {
 
     private final FileExportService fileExportService;
+    private final ExportJobService exportJobService;
+    private final ExportCacheService exportCacheService;
     private final ExportFieldConfigService exportFieldConfigService;
     private final ProcessingStrategyService processingStrategyService;
     private final OperationStatsService operationStatsService;
@@ -142,6 +156,7 @@ public class ExportController {
                                 @RequestParam String configName,
                                 @RequestParam String configDescription,
                                 @RequestParam ProcessingStrategyType strategyType,
+                                @RequestParam(required = false) List<ProcessingStrategyType> strategyChain,
                                 RedirectAttributes redirectAttributes) {
         log.debug("Создание нового маппинга экспорта для клиента {}", clientName);
         try {
@@ -156,7 +171,7 @@ public class ExportController {
                     new TypeReference<>() {
                     });
 
-            exportFieldConfigService.createConfig(clientService.getClientByName(clientName).getId(), configName, fields, configDescription, strategyType);
+            exportFieldConfigService.createConfig(clientService.getClientByName(clientName).getId(), configName, fields, configDescription, strategyType, strategyChain);
             redirectAttributes.addFlashAttribute("success", "Маппинг успешно создан");
         } catch (Exception e) {
             log.error("Ошибка при создании маппинга: {}", e.getMessage(), e);
@@ -177,6 +192,7 @@ public class ExportController {
                                 @RequestParam String configName,
                                 @RequestParam String configDescription,
                                 @RequestParam ProcessingStrategyType strategyType,
+                                @RequestParam(required = false) List<ProcessingStrategyType> strategyChain,
                                 RedirectAttributes redirectAttributes) {
         log.debug("Обновление маппинга {} для клиента {}", mappingId, clientName);
         try {
@@ -190,7 +206,8 @@ public class ExportController {
                     configName,
                     mappingId,
                     configDescription,
-                    strategyType
+                    strategyType,
+                    strategyChain
             );
             redirectAttributes.addFlashAttribute("success", "Маппинг успешно обновлен");
         } catch (Exception e) {
@@ -225,7 +242,8 @@ public class ExportController {
     }
 
     /**
-     * Начало экспорта (поддерживает как одиночный, так и множественный выбор файлов)
+     * Начало экспорта (поддерживает как одиночный, так и множественный выбор файлов).
+     * Экспорт ставится в очередь, в ответе возвращается ID операции
      */
     @PostMapping("/client/{clientName}/export/start")
     @ResponseBody
@@ -256,23 +274,13 @@ public class ExportController {
                 throw new IllegalArgumentException("Не указаны файлы для экспорта");
             }
 
-            // Всегда используем экспорт нескольких файлов, даже для одного файла
-            // Это гарантирует создание только одной операции экспорта
-            ExportResult result = fileExportService.exportFilesData(fileIdsToExport, config, request.getFileType());
-
-            if (result.isSuccess()) {
-                return Map.of(
-                        "status", "success",
-                        "fileName", result.getFileName(),
-                        "recordsProcessed", result.getBatchProcessingData() != null ?
-                                result.getBatchProcessingData().getSuccessCount() : 0
-                );
-            } else {
-                return Map.of(
-                        "status", "error",
-                        "error", result.getErrorMessage()
-                );
-            }
+            // Экспорт выполняется в фоне, файл затем скачивается по ID операции
+            ExportOperation operation = exportJobService.startExport(fileIdsToExport, config, request.getFileType());
+
+            return Map.of(
+                    "status", "started",
+                    "operationId", operation.getId()
+            );
         } catch (Exception e) {
             log.error("Ошибка при запуске экспорта: {}", e.getMessage(), e);
             return Map.of(
@@ -300,7 +308,9 @@ public class ExportController {
                     "progress", operation.getCurrentProgress(),
                     "message", operation.getMetadata().getOrDefault("statusMessage", ""),
                     "processed", operation.getProcessedRecords(),
-                    "total", operation.getTotalRecords()
+                    "total", operation.getTotalRecords(),
+                    "error", operation.getErrors().isEmpty() ? "" :
+                            operation.getErrors().get(operation.getErrors().size() - 1)
             );
 
         } catch (Exception e) {
@@ -313,11 +323,55 @@ public class ExportController {
     }
 
     /**
-     * Скачивание экспортированного файла
+     * Скачивание файла фонового экспорта по ID операции.
+     * Поддерживаются запросы диапазонов (Range) для докачки больших файлов
+     */
+    @GetMapping("/client/{clientName}/export/operations/{operationId}/download")
+    @LogExecution("Скачивание файла экспорта")
+    public ResponseEntity<Resource> downloadExportOperationFile(@PathVariable String clientName,
+                                                                @PathVariable Long operationId) {
+        try {
+            Long clientId = clientService.getClientByName(clientName).getId();
+            ExportOperation operation = operationStatsService.findOperation(operationId)
+                    .filter(op -> op instanceof ExportOperation)
+                    .map(op -> (ExportOperation) op)
+                    .filter(op -> clientId.equals(op.getClientId()))
+                    .orElseThrow(() -> new IllegalArgumentException("Операция экспорта не найдена"));
+
+            if (operation.getStatus() != OperationStatus.COMPLETED || operation.getTargetPath() == null) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).build();
+            }
+
+            Path file = Path.of(operation.getTargetPath());
+            if (!Files.isRegularFile(file)) {
+                return ResponseEntity.notFound().build();
+            }
+
+            String filename = (String) operation.getMetadata().getOrDefault("fileName", file.getFileName().toString());
+            String encodedFilename = new String(filename.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(getExportMediaType(operation.getExportFormat(), getOperationParams(operation)));
+            headers.setContentDispositionFormData("attachment", encodedFilename);
+
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(new FileSystemResource(file));
+
+        } catch (Exception e) {
+            log.error("Ошибка при скачивании файла экспорта {}: {}", operationId, e.getMessage(), e);
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Скачивание экспортированного файла.
+     * Данные читаются из БД курсором и пишутся прямо в ответ, без формирования файла в памяти.
+     * Повторное скачивание того же экспорта отдается из дискового кэша без обращения к данным
      */
     @GetMapping("/client/{clientName}/export/download")
     @LogExecution("Скачивание экспортированного файла")
-    public ResponseEntity<Resource> downloadExportedFile(
+    public ResponseEntity<StreamingResponseBody> downloadExportedFile(
             @PathVariable String clientName,
             @RequestParam(required = false) String fileIds,
             @RequestParam Long configId,
@@ -354,39 +408,41 @@ public class ExportController {
             }
 
             log.debug("Экспорт из файлов: {}", fileIdList);
-            // Используем exportFilesData для создания одной операции
-            ExportResult exportResult = fileExportService.exportFilesData(fileIdList, exportConfig, fileType);
-
-            if (!exportResult.isSuccess()) {
-                log.error("Ошибка при экспорте файла: {}", exportResult.getErrorMessage());
-                return ResponseEntity.badRequest().build();
-            }
+            // Ошибки параметров должны вернуться до начала передачи данных
+            String filename = fileExportService.prepareStreamingExport(fileIdList, exportConfig, fileType);
 
             // Кодируем имя файла для корректного отображения в браузере
-            String filename = exportResult.getFileName();
             String encodedFilename = new String(filename.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
 
             // Устанавливаем HTTP-заголовки
             HttpHeaders headers = new HttpHeaders();
 
-            // Выбираем MIME-тип в зависимости от формата файла
-            if ("CSV".equalsIgnoreCase(fileType)) {
-                headers.setContentType(MediaType.parseMediaType("text/csv; charset=windows-1251"));
-            } else if ("XLSX".equalsIgnoreCase(fileType)) {
-                headers.setContentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
-            } else {
-                headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            }
+            headers.setContentType(getExportMediaType(fileType, exportConfig.getParams()));
 
             headers.setContentDispositionFormData("attachment", encodedFilename);
 
-            // Создаем ресурс для скачивания
-            ByteArrayResource resource = new ByteArrayResource(exportResult.getFileContent());
+            boolean sharedData = strategyManager.getChain(exportConfig).dependsOnSharedData();
+            String cacheKey = exportCacheService.buildKey(fileIdList, exportConfig, fileType, sharedData);
+            FileChannel cachedFile = exportCacheService.open(cacheKey);
+            if (cachedFile != null) {
+                log.debug("Экспорт отдается из кэша: {}", cacheKey);
+                headers.setContentLength(cachedFile.size());
+                return ResponseEntity.ok()
+                        .headers(headers)
+                        .body(outputStream -> {
+                            try (InputStream cachedStream = Channels.newInputStream(cachedFile)) {
+                                cachedStream.transferTo(outputStream);
+                            }
+                        });
+            }
+
+            StreamingResponseBody body = outputStream ->
+                    exportCacheService.writeThrough(cacheKey, fileIdList, sharedData, outputStream, target ->
+                            fileExportService.streamFilesData(fileIdList, exportConfig, fileType, filename, target));
 
             return ResponseEntity.ok()
                     .headers(headers)
-                    .contentLength(exportResult.getFileContent().length)
-                    .body(resource);
+                    .body(body);
 
         } catch (Exception e) {
             log.error("Ошибка при экспорте и скачивании файла: {}", e.getMessage(), e);
@@ -424,9 +480,9 @@ public class ExportController {
             }
 
             // Получаем список обязательных и опциональных параметров
-            DataProcessingStrategy strategy = strategyManager.getStrategy(strategyType);
-            List<StrategyParameterDescriptor> allParams = strategy.getParameterDescriptors();
-            Set<String> requiredParams = strategy.getRequiredParameters();
+            StrategyChain chain = strategyManager.getChain(config);
+            List<StrategyParameterDescriptor> allParams = chain.getParameterDescriptors();
+            Set<String> requiredParams = chain.getRequiredParameters();
 
             // Получаем текущие значения параметров
             Map<String, String> currentValues = config.getParams() != null ?
@@ -508,6 +564,36 @@ public class ExportController {
                 enabledFields.size(), disabledFields.size());
     }
 
+    /**
+     * Параметры конфигурации, сохраненные в операции экспорта
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, String> getOperationParams(ExportOperation operation) {
+        if (operation.getExportConfig() == null || !(operation.getExportConfig().get("params") instanceof Map)) {
+            return Map.of();
+        }
+        return (Map<String, String>) operation.getExportConfig().get("params");
+    }
+
+    /**
+     * Выбирает MIME-тип в зависимости от формата файла
+     */
+    private MediaType getExportMediaType(String fileType, Map<String, String> params) {
+        ExportCompression compression = ExportSplitPolicy.resolve(params).splitsFiles()
+                ? ExportCompression.ZIP : ExportCompression.resolve(params);
+        if (compression.getMediaType() != null) {
+            return MediaType.parseMediaType(compression.getMediaType());
+        }
+        if ("CSV".equalsIgnoreCase(fileType)) {
+            return new MediaType("text", "csv", CSVDataExporter.resolveCharset(params));
+        } else if ("XLSX".equalsIgnoreCase(fileType)) {
+            return MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        } else if ("NDJSON".equalsIgnoreCase(fileType)) {
+            return MediaType.parseMediaType("application/x-ndjson");
+        }
+        return MediaType.APPLICATION_OCTET_STREAM;
+    }
+
     private void validateMappingOwnership(ExportConfig mapping, Long clientId) {
         if (!mapping.getClient().getId().equals(clientId)) {
             throw new IllegalArgumentException("Маппинг не принадлежит указанному клиенту");
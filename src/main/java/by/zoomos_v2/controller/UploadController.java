@@ -3,10 +3,12 @@ package by.zoomos_v2.controller;
 import by.zoomos_v2.aspect.LogExecution;
 import by.zoomos_v2.model.Client;
 import by.zoomos_v2.model.FileMetadata;
+import by.zoomos_v2.model.enums.OperationStatus;
 import by.zoomos_v2.model.operation.ImportOperation;
 import by.zoomos_v2.service.client.ClientService;
 import by.zoomos_v2.service.file.input.service.FileProcessingService;
 import by.zoomos_v2.service.file.input.service.FileUploadService;
+import by.zoomos_v2.service.file.input.service.FileDryRunService;
 import by.zoomos_v2.service.file.metadata.FileMetadataService;
 import by.zoomos_v2.service.statistics.OperationStatsService;
 import lombok.RequiredArgsConstructor;
@@ -36,6 +38,7 @@ public class UploadController {
     private final OperationStatsService operationStatsService;
     private final ClientService clientService;
     private final FileMetadataService fileMetadataService;
+    private final FileDryRunService fileDryRunService;
 
 
     /**
@@ -46,6 +49,7 @@ public class UploadController {
     public String uploadFile(@PathVariable String clientName,
                              @RequestParam("file") MultipartFile file,
                              @RequestParam(required = false) Long mappingId,
+                             @RequestParam(defaultValue = "false") boolean dryRun,
                              RedirectAttributes redirectAttributes) {
         log.debug("Загрузка файла {} для магазина {}", file.getOriginalFilename(), clientName);
 
@@ -56,6 +60,15 @@ public class UploadController {
 
         try {
             FileMetadata metadata = fileUploadService.uploadFile(file, clientService.getClientByName(clientName).getId(), mappingId);
+
+            // Проверка без импорта: файл сохраняется, данные в БД не записываются
+            if (dryRun) {
+                ImportOperation validation = fileDryRunService.startDryRun(metadata.getId());
+                redirectAttributes.addFlashAttribute("success",
+                        "Проверка файла поставлена в очередь. Операция: " + validation.getId());
+                return "redirect:/client/" + clientName + "/files/" + metadata.getId() + "/validation";
+            }
+
             fileProcessingService.processFileAsync(metadata.getId());
 
             redirectAttributes.addFlashAttribute("success",
@@ -104,6 +117,81 @@ public class UploadController {
         }
     }
 
+    /**
+     * Проверка файла без импорта
+     */
+    @PostMapping("/{fileId}/validate")
+    @LogExecution("Проверка файла без импорта")
+    public String validateFile(@PathVariable String clientName,
+                               @PathVariable Long fileId,
+                               RedirectAttributes redirectAttributes) {
+        try {
+            FileMetadata metadata = fileUploadService.getFileMetadata(fileId);
+            validateFileOwnership(metadata, clientService.getClientByName(clientName).getId());
+            ImportOperation validation = fileDryRunService.startDryRun(fileId);
+            redirectAttributes.addFlashAttribute("success",
+                    "Проверка файла поставлена в очередь. Операция: " + validation.getId());
+        } catch (Exception e) {
+            log.error("Ошибка при проверке файла: {}", e.getMessage(), e);
+            redirectAttributes.addFlashAttribute("error", "Ошибка при проверке файла: " + e.getMessage());
+        }
+        return "redirect:/client/" + clientName + "/files/" + fileId + "/validation";
+    }
+
+    /**
+     * Страница результатов проверки файла
+     */
+    @GetMapping("/{fileId}/validation")
+    public String showValidation(@PathVariable String clientName,
+                                 @PathVariable Long fileId,
+                                 Model model) {
+        try {
+            Client client = clientService.getClientByName(clientName);
+            FileMetadata metadata = fileUploadService.getFileMetadata(fileId);
+            validateFileOwnership(metadata, client.getId());
+
+            model.addAttribute("client", client);
+            model.addAttribute("file", metadata);
+            model.addAttribute("imported", operationStatsService.findOperationByFileId(fileId).isPresent());
+            operationStatsService.findValidationByFileId(fileId).ifPresent(operation -> {
+                model.addAttribute("operation", operation);
+                model.addAttribute("inProgress", operation.getStatus() == OperationStatus.PENDING
+                        || operation.getStatus() == OperationStatus.IN_PROGRESS);
+                model.addAttribute("report", operation.getMetadata().get("validationReport"));
+            });
+            return "files/validation";
+        } catch (Exception e) {
+            log.error("Ошибка при получении результатов проверки: {}", e.getMessage(), e);
+            model.addAttribute("error", "Ошибка при получении результатов проверки: " + e.getMessage());
+            return "error";
+        }
+    }
+
+    /**
+     * Запуск импорта ранее проверенного файла
+     */
+    @PostMapping("/{fileId}/process")
+    @LogExecution("Импорт проверенного файла")
+    public String processFile(@PathVariable String clientName,
+                              @PathVariable Long fileId,
+                              RedirectAttributes redirectAttributes) {
+        try {
+            FileMetadata metadata = fileUploadService.getFileMetadata(fileId);
+            validateFileOwnership(metadata, clientService.getClientByName(clientName).getId());
+
+            if (operationStatsService.findOperationByFileId(fileId).isPresent()) {
+                redirectAttributes.addFlashAttribute("error", "Файл уже импортирован");
+            } else {
+                fileProcessingService.processFileAsync(fileId);
+                redirectAttributes.addFlashAttribute("success", "Файл поставлен в очередь на обработку");
+            }
+        } catch (Exception e) {
+            log.error("Ошибка при запуске импорта: {}", e.getMessage(), e);
+            redirectAttributes.addFlashAttribute("error", "Ошибка при запуске импорта: " + e.getMessage());
+        }
+        return "redirect:/client/" + clientName + "/files/status/" + fileId;
+    }
+
     /**
      * Страница статистики обработки файла
      */
@@ -71,6 +71,34 @@ public class ClientMappingConfig {
     @Column(name = "parser_config", columnDefinition = "jsonb")
     private String parserConfig;
 
+    /**
+     * Импортировать все листы Excel файла, а не только первый
+     */
+    @Column(name = "import_all_sheets")
+    private boolean importAllSheets = false;
+
+    /**
+     * Названия листов Excel файла для импорта через запятую.
+     * Если заданы, импортируются только указанные листы
+     */
+    @Column(name = "sheet_names", length = 1000)
+    private String sheetNames;
+
+    /**
+     * Поле продукта (например, productId), по которому строки файла группируются в один продукт.
+     * Данные конкурентов и регионов из сгруппированных строк сохраняются как дочерние записи.
+     * Если не задано, для каждой строки создается отдельный продукт
+     */
+    @Column(name = "product_group_key")
+    private String productGroupKey;
+
+    /**
+     * Дельта-импорт: сохраняются только строки, новые или измененные
+     * по сравнению с предыдущим файлом магазина с этим маппингом
+     */
+    @Column(name = "delta_import")
+    private boolean deltaImport = false;
+
     /**
      * Дата создания конфигурации
      */
@@ -40,6 +40,12 @@ public class ExportConfig {
     @Column(name = "strategy_type")
     private ProcessingStrategyType strategyType = ProcessingStrategyType.DEFAULT;
 
+    /**
+     * Дополнительные стратегии, применяемые после основной, через запятую в порядке применения
+     */
+    @Column(name = "strategy_chain")
+    private String strategyChain;
+
     @OneToMany(mappedBy = "exportConfig", cascade = CascadeType.ALL, orphanRemoval = true)
     @OrderBy("position")
     @ToString.Exclude
@@ -70,6 +76,36 @@ public class ExportConfig {
         updatedAt = LocalDateTime.now();
     }
 
+    /**
+     * Возвращает цепочку стратегий: основная стратегия и дополнительные в порядке применения.
+     * Стандартная стратегия не меняет строки, поэтому в цепочке из нескольких стадий опускается
+     */
+    public List<ProcessingStrategyType> getStrategyTypes() {
+        List<ProcessingStrategyType> types = new ArrayList<>();
+        types.add(strategyType != null ? strategyType : ProcessingStrategyType.DEFAULT);
+        if (strategyChain != null && !strategyChain.isBlank()) {
+            for (String name : strategyChain.split(",")) {
+                ProcessingStrategyType type = name.isBlank() ? null : ProcessingStrategyType.valueOf(name.trim());
+                if (type != null && !types.contains(type)) {
+                    types.add(type);
+                }
+            }
+        }
+        if (types.size() > 1) {
+            types.removeIf(ProcessingStrategyType.DEFAULT::equals);
+        }
+        return types.isEmpty() ? List.of(ProcessingStrategyType.DEFAULT) : types;
+    }
+
+    /**
+     * Устанавливает дополнительные стратегии цепочки
+     */
+    public void setStrategyChainTypes(List<ProcessingStrategyType> types) {
+        strategyChain = types == null || types.isEmpty() ? null : types.stream()
+                .map(ProcessingStrategyType::name)
+                .collect(Collectors.joining(","));
+    }
+
     /**
      * Получает значение параметра по ключу
      */
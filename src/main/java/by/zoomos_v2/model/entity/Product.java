@@ -12,7 +12,9 @@ import java.util.List;
 @Setter
 @Getter
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "idx_products_client_fingerprint", columnList = "client_id, row_fingerprint")
+})
 public class Product {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -29,6 +31,18 @@ public class Product {
     @FieldDescription(value = "пропустить", skipMapping = true)
     private Long clientId;
 
+    /**
+     * Отпечаток исходной строки файла при дельта-импорте
+     */
+    @FieldDescription(value = "пропустить", skipMapping = true)
+    private Long rowFingerprint;
+
+    /**
+     * Файл дельта-импорта, в котором строка товара отсутствовала (null - товар актуален)
+     */
+    @FieldDescription(value = "пропустить", skipMapping = true)
+    private Long removedByFileId;
+
     @FieldDescription("ID товара")
     private String productId;
 
@@ -6,6 +6,7 @@ package by.zoomos_v2.model.enums;
 public enum OperationType {
     IMPORT("Импорт данных"),
     EXPORT("Экспорт данных"),
+    VALIDATION("Проверка данных"),
     UTILITY("Утилита"),
     OTHER("Прочее");
 
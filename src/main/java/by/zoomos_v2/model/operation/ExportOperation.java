@@ -29,6 +29,11 @@ public class ExportOperation extends BaseOperation {
      */
     @Column(name = "target_path")
     private String targetPath;
+    /**
+     * Размер экспортированного файла в байтах
+     */
+    @Column(name = "file_size")
+    private Long fileSize;
     /**
      * Количество сгенерированных файлов
      */
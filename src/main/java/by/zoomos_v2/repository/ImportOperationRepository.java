@@ -1,5 +1,6 @@
 package by.zoomos_v2.repository;
 
+import by.zoomos_v2.model.enums.OperationType;
 import by.zoomos_v2.model.operation.ImportOperation;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -20,7 +21,11 @@ public interface ImportOperationRepository extends BaseOperationRepository<Impor
      */
     ImportOperation findFirstBySourceIdentifierOrderByStartTimeDesc(String sourceIdentifier);
 
-    Optional<ImportOperation> findByFileId(Long fileId);
+    /**
+     * Находит последнюю операцию заданного типа для файла.
+     * Для одного файла может быть несколько проверок (VALIDATION) и одна операция импорта
+     */
+    Optional<ImportOperation> findFirstByFileIdAndTypeOrderByStartTimeDesc(Long fileId, OperationType type);
 
     /**
      * Находит последнюю операцию импорта по идентификатору источника и клиенту
@@ -61,14 +61,32 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
                                                         @Param("taskNumber") String taskNumber);
 
     /**
-     * Получает ключи валидации батчами для минимизации использования памяти.
-     * Теперь возвращает только значения поля competitor_additional
+     * Получает границы идентификаторов данных конкурентов задания
+     * для разбиения загрузки ключей на непересекающиеся диапазоны
      *
      * @param dataSource тип источника данных
      * @param taskNumber номер задания
-     * @param size размер страницы
-     * @param offset смещение
-     * @return множество ключей валидации для текущей страницы
+     * @return минимальный и максимальный id и количество записей site_data задания
+     */
+    @Query(value =
+            "SELECT MIN(c.id) AS minId, MAX(c.id) AS maxId, COUNT(c.id) AS rowCount " +
+                    "FROM zoomos_v2.public.products p " +
+                    "INNER JOIN zoomos_v2.public.site_data c ON c.product_id = p.id " +
+                    "WHERE p.data_source = :dataSource " +
+                    "AND p.product_additional1 = :taskNumber",
+            nativeQuery = true)
+    IdRange findCompetitorIdRangeByTaskNumber(@Param("dataSource") String dataSource,
+                                              @Param("taskNumber") String taskNumber);
+
+    /**
+     * Получает ключи валидации задания из диапазона id записей site_data.
+     * Диапазоны не пересекаются, поэтому каждая запись читается одним запросом один раз
+     *
+     * @param dataSource тип источника данных
+     * @param taskNumber номер задания
+     * @param fromId     начало диапазона id (включительно)
+     * @param toId       конец диапазона id (включительно)
+     * @return множество ключей валидации диапазона
      */
     @Query(value =
             "SELECT DISTINCT UPPER(c.competitor_additional) " +
@@ -76,12 +94,12 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
                     "INNER JOIN zoomos_v2.public.site_data c ON c.product_id = p.id " +
                     "WHERE p.data_source = :dataSource " +
                     "AND p.product_additional1 = :taskNumber " +
-                    "LIMIT :size OFFSET :offset",
+                    "AND c.id BETWEEN :fromId AND :toId",
             nativeQuery = true)
-    Set<String> findValidationKeysByTaskNumberPaginated(@Param("dataSource") String dataSource,
+    Set<String> findValidationKeysByTaskNumberInIdRange(@Param("dataSource") String dataSource,
                                                         @Param("taskNumber") String taskNumber,
-                                                        @Param("size") int size,
-                                                        @Param("offset") int offset);
+                                                        @Param("fromId") long fromId,
+                                                        @Param("toId") long toId);
 
     /**
      * Подсчитывает количество записей для задания/отчета
@@ -92,6 +110,18 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
      */
     long countByDataSourceAndProductAdditional1(DataSourceType dataSource, String taskNumber);
 
+    /**
+     * Находит номера заданий, товары которых загружены из файла
+     *
+     * @param fileId     идентификатор файла
+     * @param dataSource тип источника данных
+     * @return номера заданий
+     */
+    @Query("SELECT DISTINCT p.productAdditional1 FROM Product p " +
+            "WHERE p.fileId = :fileId AND p.dataSource = :dataSource AND p.productAdditional1 IS NOT NULL")
+    List<String> findTaskNumbersByFileId(@Param("fileId") Long fileId,
+                                         @Param("dataSource") DataSourceType dataSource);
+
     /**
      * Проверяет существование продукта с указанными параметрами
      */
@@ -107,4 +137,15 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
                                            @Param("retailCode") String retailCode,
                                            @Param("taskNumber") String taskNumber,
                                            @Param("dataSource") DataSourceType dataSource);
-}
\ No newline at end of file
+
+    /**
+     * Границы диапазона идентификаторов и количество записей в нем
+     */
+    interface IdRange {
+        Long getMinId();
+
+        Long getMaxId();
+
+        Long getRowCount();
+    }
+}
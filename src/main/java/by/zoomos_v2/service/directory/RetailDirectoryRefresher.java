@@ -0,0 +1,186 @@
+package by.zoomos_v2.service.directory;
+
+import by.zoomos_v2.model.RetailNetworkDirectory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Инкрементальное обновление справочника розничных сетей.
+ * Новый справочник потоком загружается через COPY во временную таблицу, затем одним запросом
+ * добавляются новые коды, обновляются измененные записи и удаляются исчезнувшие коды.
+ * Таблица справочника не пустеет во время обновления: до фиксации транзакции читатели видят
+ * прежнюю версию. Неизмененные записи не переписываются, их версия и дата не меняются.
+ * Должен вызываться внутри транзакции: временная таблица удаляется при ее фиксации
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RetailDirectoryRefresher {
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final String DROP_STAGING_SQL = "DROP TABLE IF EXISTS retail_network_directory_staging";
+
+    private static final String CREATE_STAGING_SQL =
+            "CREATE TEMP TABLE retail_network_directory_staging (" +
+                    "line_no BIGINT, " +
+                    "retail_code VARCHAR(255), " +
+                    "retail_name VARCHAR(255), " +
+                    "physical_address VARCHAR(500), " +
+                    "region_code VARCHAR(255), " +
+                    "region_name VARCHAR(255)" +
+                    ") ON COMMIT DROP";
+
+    private static final String COPY_SQL =
+            "COPY retail_network_directory_staging " +
+                    "(line_no, retail_code, retail_name, physical_address, region_code, region_name) " +
+                    "FROM STDIN (FORMAT csv)";
+
+    /**
+     * При повторе кода берется первая запись, как и в снимке справочника.
+     * Удаление и вставка затрагивают разные коды, поэтому выполняются в одном запросе
+     */
+    private static final String MERGE_SQL =
+            "WITH deleted AS (" +
+                    "DELETE FROM retail_network_directory d " +
+                    "WHERE NOT EXISTS (SELECT 1 FROM retail_network_directory_staging s " +
+                    "WHERE s.retail_code = d.retail_code) " +
+                    "RETURNING 1" +
+                    "), upserted AS (" +
+                    "INSERT INTO retail_network_directory AS d " +
+                    "(retail_code, retail_name, physical_address, region_code, region_name, " +
+                    "created_at, updated_at, version) " +
+                    "SELECT DISTINCT ON (s.retail_code) s.retail_code, s.retail_name, s.physical_address, " +
+                    "s.region_code, s.region_name, now(), now(), 0 " +
+                    "FROM retail_network_directory_staging s " +
+                    "ORDER BY s.retail_code, s.line_no " +
+                    "ON CONFLICT (retail_code) DO UPDATE SET " +
+                    "retail_name = EXCLUDED.retail_name, " +
+                    "physical_address = EXCLUDED.physical_address, " +
+                    "region_code = EXCLUDED.region_code, " +
+                    "region_name = EXCLUDED.region_name, " +
+                    "updated_at = now(), " +
+                    "version = COALESCE(d.version, 0) + 1 " +
+                    "WHERE (d.retail_name, d.physical_address, d.region_code, d.region_name) " +
+                    "IS DISTINCT FROM " +
+                    "(EXCLUDED.retail_name, EXCLUDED.physical_address, EXCLUDED.region_code, EXCLUDED.region_name) " +
+                    "RETURNING (xmax = 0) AS inserted" +
+                    ") SELECT " +
+                    "(SELECT COUNT(*) FROM upserted WHERE inserted), " +
+                    "(SELECT COUNT(*) FROM upserted WHERE NOT inserted), " +
+                    "(SELECT COUNT(*) FROM deleted)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Приводит справочник к переданному набору записей
+     *
+     * @param directories новые записи справочника
+     * @return количество добавленных, измененных и удаленных записей
+     */
+    public DirectoryRefreshResult refresh(List<RetailNetworkDirectory> directories) {
+        return jdbcTemplate.execute((ConnectionCallback<DirectoryRefreshResult>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(DROP_STAGING_SQL);
+                statement.execute(CREATE_STAGING_SQL);
+            }
+            long staged = copyToStaging(connection, directories);
+            log.debug("Во временную таблицу загружено {} записей справочника", staged);
+
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery(MERGE_SQL)) {
+                resultSet.next();
+                return new DirectoryRefreshResult(resultSet.getLong(1), resultSet.getLong(2), resultSet.getLong(3));
+            }
+        });
+    }
+
+    /**
+     * Записи передаются в COPY порциями CSV по мере формирования
+     */
+    private long copyToStaging(Connection connection, List<RetailNetworkDirectory> directories) throws SQLException {
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(COPY_BUFFER_SIZE + 1024);
+            StringBuilder line = new StringBuilder(256);
+            long position = 0;
+            for (RetailNetworkDirectory directory : directories) {
+                if (directory.getRetailCode() == null) {
+                    log.warn("Пропущена запись справочника без кода розничной сети: {}", directory.getRetailName());
+                    continue;
+                }
+                line.setLength(0);
+                line.append(position++);
+                appendField(line, directory.getRetailCode());
+                appendField(line, directory.getRetailName());
+                appendField(line, directory.getPhysicalAddress());
+                appendField(line, directory.getRegionCode());
+                appendField(line, directory.getRegionName());
+                line.append('\n');
+
+                byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                buffer.write(bytes, 0, bytes.length);
+                if (buffer.size() >= COPY_BUFFER_SIZE) {
+                    copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+                    buffer.reset();
+                }
+            }
+            if (buffer.size() > 0) {
+                copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+            }
+            return copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    /**
+     * Поле CSV: null - пустое значение без кавычек, строка - в кавычках с удвоением кавычек
+     */
+    private static void appendField(StringBuilder line, String value) {
+        line.append(',');
+        if (value == null) {
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char current = value.charAt(i);
+            if (current == '"') {
+                line.append('"');
+            }
+            line.append(current);
+        }
+        line.append('"');
+    }
+
+    /**
+     * Итог обновления справочника
+     *
+     * @param inserted добавлено новых кодов
+     * @param updated  изменено записей
+     * @param deleted  удалено исчезнувших кодов
+     */
+    public record DirectoryRefreshResult(long inserted, long updated, long deleted) {
+
+        /**
+         * Изменился ли справочник
+         */
+        public boolean hasChanges() {
+            return inserted + updated + deleted > 0;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package by.zoomos_v2.service.directory;
+
+import by.zoomos_v2.model.RetailNetworkDirectory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Неизменяемый снимок справочника розничных сетей в памяти.
+ * Снимок заменяется целиком при обновлении справочника, поэтому читатели
+ * всегда видят согласованную версию без блокировок и обращений к БД
+ *
+ * @param version номер версии справочника
+ * @param entries записи по коду розничной сети
+ */
+public record RetailDirectorySnapshot(long version, Map<String, Entry> entries) {
+
+    /**
+     * Данные розничной сети, используемые при обогащении выгрузки
+     */
+    public record Entry(String retailName, String regionName, String physicalAddress) {
+    }
+
+    /**
+     * Строит снимок по записям справочника. При повторе кода остается первая запись
+     */
+    public static RetailDirectorySnapshot of(long version, List<RetailNetworkDirectory> directories) {
+        Map<String, Entry> entries = new HashMap<>(directories.size() * 4 / 3 + 1);
+        for (RetailNetworkDirectory directory : directories) {
+            if (directory.getRetailCode() != null) {
+                entries.putIfAbsent(directory.getRetailCode(), new Entry(directory.getRetailName(),
+                        directory.getRegionName(), directory.getPhysicalAddress()));
+            }
+        }
+        return new RetailDirectorySnapshot(version, Map.copyOf(entries));
+    }
+
+    /**
+     * Запись по коду розничной сети или null
+     */
+    public Entry get(String retailCode) {
+        return retailCode != null ? entries.get(retailCode) : null;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
@@ -3,71 +3,116 @@ package by.zoomos_v2.service.directory;
 
 import by.zoomos_v2.model.RetailNetworkDirectory;
 import by.zoomos_v2.repository.RetailNetworkDirectoryRepository;
+import by.zoomos_v2.service.directory.RetailDirectoryRefresher.DirectoryRefreshResult;
+import by.zoomos_v2.service.file.export.service.ExportCacheService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Сервис для управления справочником розничных сетей.
  * Обеспечивает загрузку, обновление и получение данных справочника.
+ * Для обогащения выгрузок справочник целиком держится в памяти неизменяемым снимком,
+ * который атомарно заменяется после обновления справочника
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class RetailNetworkDirectoryService {
     private final RetailNetworkDirectoryRepository directoryRepository;
-    private static final int BATCH_SIZE = 50;
+    private final RetailDirectoryRefresher directoryRefresher;
+    private final ExportCacheService exportCacheService;
+
+    private final AtomicLong directoryVersion = new AtomicLong();
+    private final AtomicReference<RetailDirectorySnapshot> snapshot = new AtomicReference<>();
 
     /**
-     * Получает мапу записей справочника по списку кодов
+     * Возвращает снимок справочника в памяти.
+     * Снимок загружается из БД при первом обращении и после смены версии справочника
      *
-     * @param retailCodes список кодов розничных сетей
-     * @return мапа код -> запись справочника
+     * @return неизменяемый снимок справочника
      */
-    @Transactional(readOnly = true)
-    @Cacheable(value = "retailDirectoryMap", key = "#retailCodes.hashCode()")
-    public Map<String, RetailNetworkDirectory> getDirectoryMap(List<String> retailCodes) {
-        log.debug("Загрузка записей справочника для {} кодов", retailCodes.size());
-        return directoryRepository.findAllByRetailCodeIn(retailCodes).stream()
-                .collect(Collectors.toMap(
-                        RetailNetworkDirectory::getRetailCode,
-                        Function.identity(),
-                        (existing, replacement) -> existing
-                ));
+    public RetailDirectorySnapshot getSnapshot() {
+        RetailDirectorySnapshot current = snapshot.get();
+        if (current != null && current.version() == directoryVersion.get()) {
+            return current;
+        }
+        return reloadSnapshot();
     }
 
     /**
-     * Обновление справочника новыми данными
+     * Загружает снимок текущей версии. Одновременные вызовы загружают справочник один раз
+     */
+    private synchronized RetailDirectorySnapshot reloadSnapshot() {
+        long version = directoryVersion.get();
+        RetailDirectorySnapshot current = snapshot.get();
+        if (current != null && current.version() == version) {
+            return current;
+        }
+
+        long startTime = System.currentTimeMillis();
+        RetailDirectorySnapshot loaded = RetailDirectorySnapshot.of(version, directoryRepository.findAll());
+        snapshot.set(loaded);
+        log.info("Загружен снимок справочника версии {}: {} записей за {} мс",
+                version, loaded.size(), System.currentTimeMillis() - startTime);
+        return loaded;
+    }
+
+    /**
+     * Повышает версию справочника, заменяет снимок и сбрасывает кэш экспорта после фиксации
+     * транзакции обновления. Кэш сбрасывается после замены снимка: экспорт, начатый раньше,
+     * не попадет в кэш под новой версией общих данных со старыми записями справочника
+     */
+    private void publishNewVersion() {
+        Runnable publish = () -> {
+            directoryVersion.incrementAndGet();
+            reloadSnapshot();
+            exportCacheService.invalidateSharedData();
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    publish.run();
+                }
+            });
+        } else {
+            publish.run();
+        }
+    }
+
+    /**
+     * Обновление справочника новыми данными.
+     * Справочник обновляется по разнице с текущими записями; кеши и снимок сбрасываются,
+     * только если справочник действительно изменился
      *
      * @param directories список новых записей справочника
+     * @return количество добавленных, измененных и удаленных записей
      */
     @Transactional
-    @CacheEvict(value = "retailDirectoryMap", allEntries = true)
-    public void updateDirectory(List<RetailNetworkDirectory> directories) {
+    public DirectoryRefreshResult updateDirectory(List<RetailNetworkDirectory> directories) {
         log.info("Начало обновления справочника. Количество записей: {}", directories.size());
 
         try {
-            // Очищаем текущие данные
-            directoryRepository.deleteAllRecords();
-            log.debug("Существующие записи справочника удалены");
+            long startTime = System.currentTimeMillis();
+            DirectoryRefreshResult result = directoryRefresher.refresh(directories);
+            log.info("Справочник обновлен за {} мс: добавлено {}, изменено {}, удалено {}",
+                    System.currentTimeMillis() - startTime, result.inserted(), result.updated(), result.deleted());
 
-            // Сохраняем новые данные батчами
-            for (int i = 0; i < directories.size(); i += BATCH_SIZE) {
-                int endIndex = Math.min(i + BATCH_SIZE, directories.size());
-                List<RetailNetworkDirectory> batch = directories.subList(i, endIndex);
-                directoryRepository.saveAll(batch);
-                log.debug("Сохранен батч записей {}-{}", i, endIndex);
+            if (result.hasChanges()) {
+                publishNewVersion();
+            } else {
+                log.info("Справочник не изменился, кеши сохранены");
             }
-
-            log.info("Обновление справочника успешно завершено");
+            return result;
         } catch (Exception e) {
             log.error("Ошибка при обновлении справочника: {}", e.getMessage());
             throw new RuntimeException("Ошибка обновления справочника", e);
@@ -3,39 +3,104 @@ package by.zoomos_v2.service.file.export.exporter;
 import by.zoomos_v2.model.ExportConfig;
 import by.zoomos_v2.model.ExportField;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVPrinter;
 import org.springframework.stereotype.Component;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * Реализация экспортера для CSV формата
+ * Реализация экспортера для CSV формата.
+ * Значения экранируются сразу в общий символьный буфер и кодируются одним переиспользуемым
+ * CharsetEncoder в ByteBuffer, без промежуточных строк и списков на каждую запись.
+ * На многоядерных машинах порции строк кодируются параллельно с сохранением порядка
  */
 @Slf4j
 @Component
 public class CSVDataExporter extends AbstractDataExporter {
     private static final String FILE_TYPE = "CSV";
     private static final String DEFAULT_DELIMITER = ";";
+    public static final String CHARSET_PARAM = "charset";
+    public static final String DEFAULT_CHARSET = "windows-1251";
+    private static final int CHAR_BUFFER_SIZE = 64 * 1024;
+    private static final char QUOTE = '"';
+    private static final char COMMENT = '#';
+    private static final int PARALLEL_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int PARALLEL_CHUNK_ROWS = 10000;
+    private static final int MAX_PENDING_CHUNKS = PARALLEL_THREADS * 2;
 
     @Override
     public String getFileType() {
         return FILE_TYPE;
     }
 
+    /**
+     * Определяет кодировку CSV из параметров экспорта (по умолчанию windows-1251)
+     */
+    public static Charset resolveCharset(Map<String, String> params) {
+        String charsetName = params != null ? params.get(CHARSET_PARAM) : null;
+        if (charsetName == null || charsetName.isBlank()) {
+            return Charset.forName(DEFAULT_CHARSET);
+        }
+        return Charset.forName(charsetName.trim());
+    }
+
     @Override
     protected void doExport(List<Map<String, Object>> data,
                             OutputStream outputStream,
                             ExportConfig exportConfig) throws Exception {
         log.debug("Начало экспорта данных в CSV формат");
 
+        try {
+            exportRows(data.iterator(), outputStream, exportConfig);
+            log.info("Экспорт в CSV успешно завершен");
+        } catch (IOException e) {
+            log.error("Ошибка при экспорте в CSV: {}", e.getMessage());
+            throw e;
+        }
+    }
+
+    @Override
+    public ExportRowWriter openRowWriter(OutputStream outputStream, ExportConfig exportConfig) throws IOException {
+        return openRowWriter(Channels.newChannel(outputStream), exportConfig);
+    }
+
+    /**
+     * Части разбитой выгрузки пишутся последовательно: параллельная запись держит порции строк
+     * в памяти до кодирования, и размер части отставал бы от фактического числа строк
+     */
+    @Override
+    public ExportRowWriter openPartWriter(OutputStream outputStream, ExportConfig exportConfig) throws IOException {
+        return openRowWriter(Channels.newChannel(outputStream), exportConfig, false);
+    }
+
+    /**
+     * Открывает построчную запись CSV в канал
+     */
+    public ExportRowWriter openRowWriter(WritableByteChannel channel, ExportConfig exportConfig) throws IOException {
+        return openRowWriter(channel, exportConfig, PARALLEL_THREADS >= 2);
+    }
+
+    private ExportRowWriter openRowWriter(WritableByteChannel channel, ExportConfig exportConfig,
+                                          boolean parallel) throws IOException {
         String delimiter = exportConfig.getParam("delimiter");
         if (delimiter == null || delimiter.isEmpty()) {
             delimiter = DEFAULT_DELIMITER;
@@ -45,41 +110,296 @@ public class CSVDataExporter extends AbstractDataExporter {
         List<ExportField> enabledFields = exportConfig.getFields().stream()
                 .filter(ExportField::isEnabled)
                 .sorted(Comparator.comparingInt(ExportField::getPosition))
-                .collect(Collectors.toList());
+                .toList();
 
-        CSVFormat csvFormat = CSVFormat.DEFAULT
-                .withDelimiter(delimiter.charAt(0))
-                .withHeader(getHeadersArray(enabledFields));
+        Charset charset = resolveCharset(exportConfig.getParams());
+        String[] sourceFields = enabledFields.stream().map(ExportField::getSourceField).toArray(String[]::new);
+        String[] headers = enabledFields.stream().map(ExportField::getDisplayName).toArray(String[]::new);
 
-        try (OutputStreamWriter writer = new OutputStreamWriter(outputStream, Charset.forName("windows-1251"));
-             CSVPrinter csvPrinter = new CSVPrinter(writer, csvFormat)) {
+        CsvRowWriter rowWriter = new CsvRowWriter(channel, charset, delimiter.charAt(0), sourceFields, true);
+        rowWriter.writeHeader(headers);
+        if (!parallel) {
+            return rowWriter;
+        }
+
+        // Заголовок сбрасывается сразу, строки дальше кодируются порциями в пуле потоков
+        rowWriter.finish();
+        return new ParallelCsvRowWriter(channel, charset, delimiter.charAt(0), sourceFields);
+    }
 
-            for (Map<String, Object> record : data) {
-                List<String> values = enabledFields.stream()
-                        .map(field -> formatValue(record.get(field.getSourceField())))
-                        .collect(Collectors.toList());
-                csvPrinter.printRecord(values);
+    /**
+     * Построчная запись CSV с тем же результатом, что CSVPrinter с CSVFormat.DEFAULT:
+     * кавычки ставятся по правилам QuoteMode.MINIMAL, значения строк обрезаются по краям,
+     * отсутствующее значение пишется пустой строкой, строки разделяются CRLF
+     */
+    static class CsvRowWriter implements ExportRowWriter {
+        private final WritableByteChannel channel;
+        private final CharsetEncoder encoder;
+        private final ByteBuffer bytes;
+        private final char[] chars = new char[CHAR_BUFFER_SIZE];
+        private final char delimiter;
+        private final String[] sourceFields;
+        private int length;
+        private long rowCount;
+
+        CsvRowWriter(WritableByteChannel channel, Charset charset, char delimiter, String[] sourceFields,
+                     boolean directBuffer) {
+            this.channel = channel;
+            this.encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            int bufferSize = (int) (CHAR_BUFFER_SIZE * encoder.maxBytesPerChar());
+            this.bytes = directBuffer ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+            this.delimiter = delimiter;
+            this.sourceFields = sourceFields;
+        }
+
+        private void writeHeader(String[] headers) throws IOException {
+            for (int i = 0; i < headers.length; i++) {
+                if (i > 0) {
+                    append(delimiter);
+                }
+                // Заголовок, как и в CSVPrinter, не обрезается, а null пишется без кавычек
+                if (headers[i] != null) {
+                    appendValue(headers[i], i == 0, false);
+                }
             }
+            endRecord();
+        }
 
-            csvPrinter.flush();
-            log.info("Экспорт в CSV успешно завершен");
-        } catch (IOException e) {
-            log.error("Ошибка при экспорте в CSV: {}", e.getMessage());
-            throw e;
+        @Override
+        public void writeRow(Map<String, Object> row) throws IOException {
+            for (int i = 0; i < sourceFields.length; i++) {
+                if (i > 0) {
+                    append(delimiter);
+                }
+                Object value = row.get(sourceFields[i]);
+                appendValue(value != null ? value.toString() : "", i == 0, true);
+            }
+            endRecord();
+            rowCount++;
         }
-    }
 
-    private String[] getHeadersArray(List<ExportField> fields) {
-        return fields.stream()
-                .map(ExportField::getDisplayName)
-                .toArray(String[]::new);
-    }
+        @Override
+        public void finish() throws IOException {
+            encodeChars(true);
+            encoder.flush(bytes);
+            drainBytes();
+            encoder.reset();
+        }
+
+        @Override
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private void endRecord() throws IOException {
+            append('\r');
+            append('\n');
+        }
+
+        private void appendValue(String value, boolean firstInRecord, boolean trim) throws IOException {
+            int start = 0;
+            int end = value.length();
+            if (trim) {
+                while (start < end && value.charAt(start) <= ' ') {
+                    start++;
+                }
+                while (end > start && value.charAt(end - 1) <= ' ') {
+                    end--;
+                }
+            }
+
+            if (!needsQuotes(value, start, end, firstInRecord)) {
+                appendRange(value, start, end);
+                return;
+            }
+
+            append(QUOTE);
+            int from = start;
+            for (int i = start; i < end; i++) {
+                if (value.charAt(i) == QUOTE) {
+                    appendRange(value, from, i + 1);
+                    from = i;
+                }
+            }
+            appendRange(value, from, end);
+            append(QUOTE);
+        }
+
+        /**
+         * QuoteMode.MINIMAL: пустое первое значение записи (иначе пустая запись станет пустой строкой),
+         * значение, начинающееся с символа не больше '#' (его можно принять за комментарий),
+         * значение с разделителем, кавычкой или переводом строки и значение с пробелом в конце
+         */
+        private boolean needsQuotes(String value, int start, int end, boolean firstInRecord) {
+            if (start == end) {
+                return firstInRecord;
+            }
+            if (value.charAt(start) <= COMMENT) {
+                return true;
+            }
+            for (int i = start; i < end; i++) {
+                char c = value.charAt(i);
+                if (c == delimiter || c == QUOTE || c == '\n' || c == '\r') {
+                    return true;
+                }
+            }
+            return value.charAt(end - 1) <= ' ';
+        }
 
-    private String formatValue(Object value) {
-        if (value == null) {
-            return "";
+        private void appendRange(String value, int start, int end) throws IOException {
+            int position = start;
+            while (position < end) {
+                if (length == chars.length) {
+                    encodeChars(false);
+                }
+                int count = Math.min(end - position, chars.length - length);
+                value.getChars(position, position + count, chars, length);
+                length += count;
+                position += count;
+            }
+        }
+
+        private void append(char c) throws IOException {
+            if (length == chars.length) {
+                encodeChars(false);
+            }
+            chars[length++] = c;
+        }
+
+        /**
+         * Кодирует накопленные символы в байтовый буфер и сбрасывает его в канал.
+         * Незакодированный остаток (половина суррогатной пары) переносится в начало буфера
+         */
+        private void encodeChars(boolean endOfInput) throws IOException {
+            CharBuffer input = CharBuffer.wrap(chars, 0, length);
+            while (true) {
+                CoderResult result = encoder.encode(input, bytes, endOfInput);
+                if (result.isOverflow()) {
+                    drainBytes();
+                } else if (result.isUnderflow()) {
+                    break;
+                } else {
+                    result.throwException();
+                }
+            }
+            drainBytes();
+
+            int remaining = input.remaining();
+            if (remaining > 0) {
+                System.arraycopy(chars, input.position(), chars, 0, remaining);
+            }
+            length = remaining;
+        }
+
+        private void drainBytes() throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
         }
-        return value.toString().trim();
     }
 
+    /**
+     * Параллельная запись CSV: строки делятся на порции по PARALLEL_CHUNK_ROWS,
+     * каждая порция форматируется и кодируется в байты в пуле потоков,
+     * а готовые порции пишутся в канал строго в исходном порядке.
+     * Кодировщики порций независимы, поэтому результат совпадает с последовательной записью
+     */
+    static class ParallelCsvRowWriter implements ExportRowWriter {
+        private final WritableByteChannel channel;
+        private final Charset charset;
+        private final char delimiter;
+        private final String[] sourceFields;
+        private final ExecutorService executor = Executors.newFixedThreadPool(PARALLEL_THREADS);
+        private final Deque<Future<byte[]>> pendingChunks = new ArrayDeque<>();
+        private List<Map<String, Object>> chunk = new ArrayList<>(PARALLEL_CHUNK_ROWS);
+        private long rowCount;
+
+        ParallelCsvRowWriter(WritableByteChannel channel, Charset charset, char delimiter, String[] sourceFields) {
+            this.channel = channel;
+            this.charset = charset;
+            this.delimiter = delimiter;
+            this.sourceFields = sourceFields;
+        }
+
+        @Override
+        public void writeRow(Map<String, Object> row) throws IOException {
+            chunk.add(row);
+            rowCount++;
+            if (chunk.size() >= PARALLEL_CHUNK_ROWS) {
+                submitChunk();
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (!chunk.isEmpty()) {
+                submitChunk();
+            }
+            while (!pendingChunks.isEmpty()) {
+                writeNextChunk();
+            }
+        }
+
+        @Override
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                executor.shutdownNow();
+            } finally {
+                channel.close();
+            }
+        }
+
+        private void submitChunk() throws IOException {
+            List<Map<String, Object>> rows = chunk;
+            chunk = new ArrayList<>(PARALLEL_CHUNK_ROWS);
+            pendingChunks.addLast(executor.submit(() -> encodeChunk(rows)));
+
+            // Ограничиваем число порций в памяти: ждем и пишем самую раннюю
+            while (pendingChunks.size() >= MAX_PENDING_CHUNKS) {
+                writeNextChunk();
+            }
+        }
+
+        private byte[] encodeChunk(List<Map<String, Object>> rows) throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(rows.size() * sourceFields.length * 16);
+            CsvRowWriter chunkWriter = new CsvRowWriter(Channels.newChannel(buffer), charset, delimiter,
+                    sourceFields, false);
+            for (Map<String, Object> row : rows) {
+                chunkWriter.writeRow(row);
+            }
+            chunkWriter.finish();
+            return buffer.toByteArray();
+        }
+
+        private void writeNextChunk() throws IOException {
+            byte[] encoded;
+            try {
+                encoded = pendingChunks.removeFirst().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Запись CSV прервана", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Ошибка кодирования порции CSV: " + e.getCause().getMessage(), e.getCause());
+            }
+
+            ByteBuffer buffer = ByteBuffer.wrap(encoded);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
 }
@@ -4,7 +4,9 @@ import by.zoomos_v2.model.ExportConfig;
 import by.zoomos_v2.model.ExportResult;
 import by.zoomos_v2.service.file.BatchProcessingData;
 
+import java.io.IOException;
 import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -27,6 +29,50 @@ public interface DataExporter {
                         ExportConfig exportConfig,
                         BatchProcessingData batchProcessingData);
 
+    /**
+     * Открывает построчную запись в выходной поток для потокового экспорта
+     *
+     * @param outputStream поток для записи результата
+     * @param exportConfig конфигурация экспорта
+     * @return объект для построчной записи
+     */
+    default ExportRowWriter openRowWriter(OutputStream outputStream, ExportConfig exportConfig) throws IOException {
+        throw new UnsupportedOperationException("Потоковый экспорт не поддерживается для формата " + getFileType());
+    }
+
+    /**
+     * Открывает построчную запись части разбитой выгрузки.
+     * Размер части проверяется по записанным байтам после каждой строки, поэтому экспортер
+     * не должен накапливать строки в памяти перед записью. По умолчанию - обычная построчная запись
+     *
+     * @param outputStream поток для записи части
+     * @param exportConfig конфигурация экспорта
+     * @return объект для построчной записи
+     */
+    default ExportRowWriter openPartWriter(OutputStream outputStream, ExportConfig exportConfig) throws IOException {
+        return openRowWriter(outputStream, exportConfig);
+    }
+
+    /**
+     * Потоково записывает строки из итератора в выходной поток
+     *
+     * @param rows         итератор строк для экспорта
+     * @param outputStream поток для записи результата
+     * @param exportConfig конфигурация экспорта
+     * @return количество записанных строк
+     */
+    default long exportRows(Iterator<Map<String, Object>> rows,
+                            OutputStream outputStream,
+                            ExportConfig exportConfig) throws IOException {
+        try (ExportRowWriter rowWriter = openRowWriter(outputStream, exportConfig)) {
+            while (rows.hasNext()) {
+                rowWriter.writeRow(rows.next());
+            }
+            rowWriter.finish();
+            return rowWriter.getRowCount();
+        }
+    }
+
     /**
      * Возвращает поддерживаемый тип файла для экспорта
      */
@@ -0,0 +1,153 @@
+package by.zoomos_v2.service.file.export.exporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Сжатие файла экспорта.
+ * Выходной поток оборачивается компрессором на лету, поэтому сжатый файл не накапливается в памяти.
+ * Для gzip доступен параллельный режим: блоки сжимаются на нескольких ядрах
+ */
+public enum ExportCompression {
+    NONE("none", "", null),
+    GZIP("gzip", ".gz", "application/gzip"),
+    ZIP("zip", ".zip", "application/zip");
+
+    public static final String COMPRESSION_PARAM = "compression";
+    public static final String PARALLEL_PARAM = "parallelCompression";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String code;
+    private final String extension;
+    private final String mediaType;
+
+    ExportCompression(String code, String extension, String mediaType) {
+        this.code = code;
+        this.extension = extension;
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * Определяет сжатие из параметров экспорта (по умолчанию без сжатия)
+     *
+     * @throws IllegalArgumentException при неизвестном типе сжатия
+     */
+    public static ExportCompression resolve(Map<String, String> params) {
+        String value = params != null ? params.get(COMPRESSION_PARAM) : null;
+        if (value == null || value.isBlank()) {
+            return NONE;
+        }
+        for (ExportCompression compression : values()) {
+            if (compression.code.equalsIgnoreCase(value.trim())) {
+                return compression;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестный тип сжатия: " + value);
+    }
+
+    /**
+     * Проверяет, включено ли параллельное сжатие в параметрах экспорта
+     */
+    public static boolean isParallel(Map<String, String> params) {
+        return params != null && Boolean.parseBoolean(params.get(PARALLEL_PARAM));
+    }
+
+    /**
+     * MIME-тип сжатого файла или null, если сжатие не используется
+     */
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * Добавляет к имени файла расширение архива
+     */
+    public String fileName(String fileName) {
+        return fileName + extension;
+    }
+
+    /**
+     * Имя файла внутри архива: имя выгрузки без расширения архива
+     */
+    public String entryName(String fileName) {
+        if (!extension.isEmpty() && fileName.endsWith(extension)) {
+            return fileName.substring(0, fileName.length() - extension.length());
+        }
+        return fileName;
+    }
+
+    /**
+     * Оборачивает выходной поток компрессором.
+     * Закрытие обернутого потока завершает архив, но не закрывает исходный поток
+     *
+     * @param outputStream исходный поток
+     * @param fileName     имя выходного файла
+     * @param parallel     сжимать блоки параллельно (только gzip)
+     */
+    public OutputStream wrap(OutputStream outputStream, String fileName, boolean parallel) throws IOException {
+        if (this == NONE) {
+            return outputStream;
+        }
+        OutputStream target = new NonClosingOutputStream(outputStream);
+        return switch (this) {
+            case GZIP -> parallel ? new ParallelGzipOutputStream(target) : new AbortableGzipOutputStream(target);
+            default -> {
+                ZipOutputStream zip = new AbortableZipOutputStream(target);
+                zip.putNextEntry(new ZipEntry(entryName(fileName)));
+                yield zip;
+            }
+        };
+    }
+
+    /**
+     * Завершает архив после записи экспорта. Повторное завершение безопасно
+     */
+    public void finish(OutputStream wrapped) throws IOException {
+        if (this != NONE) {
+            wrapped.close();
+        }
+    }
+
+    /**
+     * Освобождает ресурсы компрессора после ошибки экспорта, не дописывая окончание архива,
+     * чтобы оборванная выгрузка не выглядела целым архивом. Безопасно и после finish
+     */
+    public void abort(OutputStream wrapped) {
+        if (wrapped instanceof AbortableStream stream) {
+            stream.abort();
+        }
+    }
+
+    /**
+     * Поток компрессора, который можно прервать без завершения архива
+     */
+    interface AbortableStream {
+        void abort();
+    }
+
+    private static class AbortableGzipOutputStream extends GZIPOutputStream implements AbortableStream {
+        private AbortableGzipOutputStream(OutputStream out) throws IOException {
+            super(out, BUFFER_SIZE);
+        }
+
+        @Override
+        public void abort() {
+            def.end();
+        }
+    }
+
+    private static class AbortableZipOutputStream extends ZipOutputStream implements AbortableStream {
+        private AbortableZipOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void abort() {
+            def.end();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package by.zoomos_v2.service.file.export.exporter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Построчная запись экспорта в выходной поток без накопления данных в памяти
+ */
+public interface ExportRowWriter extends Closeable {
+
+    /**
+     * Записывает одну строку экспорта
+     */
+    void writeRow(Map<String, Object> row) throws IOException;
+
+    /**
+     * Завершает формирование файла и сбрасывает данные в выходной поток
+     */
+    void finish() throws IOException;
+
+    /**
+     * Возвращает количество записанных строк
+     */
+    long getRowCount();
+
+    /**
+     * Возвращает точки разбиения выгрузки на листы или файлы: имя части, первая строка и число строк
+     */
+    default List<Map<String, Object>> getSplitPoints() {
+        return List.of();
+    }
+}
@@ -0,0 +1,60 @@
+package by.zoomos_v2.service.file.export.exporter;
+
+import java.util.Map;
+
+/**
+ * Политика разбиения больших выгрузок на листы и файлы.
+ * Лист XLSX всегда ограничен лимитом строк Excel, меньший лимит задается параметром maxRowsPerSheet.
+ * При заданных maxRowsPerFile или maxMbPerFile выгрузка делится на части, которые отдаются zip-архивом
+ *
+ * @param maxRowsPerSheet максимум строк данных на листе XLSX
+ * @param maxRowsPerFile  максимум строк данных в одной части (null - без ограничения)
+ * @param maxBytesPerFile максимум байт в одной части (null - без ограничения)
+ */
+public record ExportSplitPolicy(int maxRowsPerSheet, Long maxRowsPerFile, Long maxBytesPerFile) {
+    public static final String MAX_ROWS_PER_SHEET_PARAM = "maxRowsPerSheet";
+    public static final String MAX_ROWS_PER_FILE_PARAM = "maxRowsPerFile";
+    public static final String MAX_MB_PER_FILE_PARAM = "maxMbPerFile";
+
+    /**
+     * Лимит строк листа Excel без строки заголовка
+     */
+    public static final int EXCEL_MAX_DATA_ROWS = 1_048_575;
+
+    /**
+     * Определяет политику разбиения из параметров экспорта
+     *
+     * @throws IllegalArgumentException при некорректных значениях
+     */
+    public static ExportSplitPolicy resolve(Map<String, String> params) {
+        Long rowsPerSheet = parsePositive(params, MAX_ROWS_PER_SHEET_PARAM);
+        Long rowsPerFile = parsePositive(params, MAX_ROWS_PER_FILE_PARAM);
+        Long mbPerFile = parsePositive(params, MAX_MB_PER_FILE_PARAM);
+
+        int sheetLimit = rowsPerSheet != null ? (int) Math.min(rowsPerSheet, EXCEL_MAX_DATA_ROWS) : EXCEL_MAX_DATA_ROWS;
+        return new ExportSplitPolicy(sheetLimit, rowsPerFile, mbPerFile != null ? mbPerFile * 1024 * 1024 : null);
+    }
+
+    /**
+     * Делится ли выгрузка на несколько файлов
+     */
+    public boolean splitsFiles() {
+        return maxRowsPerFile != null || maxBytesPerFile != null;
+    }
+
+    private static Long parsePositive(Map<String, String> params, String key) {
+        String value = params != null ? params.get(key) : null;
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed <= 0) {
+                throw new IllegalArgumentException("Параметр " + key + " должен быть больше нуля");
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Некорректное значение параметра " + key + ": " + value);
+        }
+    }
+}
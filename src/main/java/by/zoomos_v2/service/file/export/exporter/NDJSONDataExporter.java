@@ -0,0 +1,125 @@
+package by.zoomos_v2.service.file.export.exporter;
+
+import by.zoomos_v2.model.ExportConfig;
+import by.zoomos_v2.model.ExportField;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Реализация экспортера для NDJSON формата (одна JSON-запись на строку).
+ * Строки пишутся потоково через JsonGenerator без построения дерева, числа и даты сохраняют свой тип.
+ * Имена полей берутся из отображаемого имени поля, а при его отсутствии - из ключа источника
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class NDJSONDataExporter extends AbstractDataExporter {
+    private static final String FILE_TYPE = "NDJSON";
+    private static final String RECORD_SEPARATOR = "\n";
+
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public String getFileType() {
+        return FILE_TYPE;
+    }
+
+    @Override
+    protected void doExport(List<Map<String, Object>> data,
+                            OutputStream outputStream,
+                            ExportConfig exportConfig) throws Exception {
+        log.debug("Начало экспорта данных в NDJSON формат");
+        exportRows(data.iterator(), outputStream, exportConfig);
+        log.info("Экспорт в NDJSON успешно завершен");
+    }
+
+    @Override
+    public ExportRowWriter openRowWriter(OutputStream outputStream, ExportConfig exportConfig) throws IOException {
+        List<ExportField> enabledFields = exportConfig.getFields().stream()
+                .filter(ExportField::isEnabled)
+                .sorted(Comparator.comparingInt(ExportField::getPosition))
+                .toList();
+
+        JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream, JsonEncoding.UTF8);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        generator.setPrettyPrinter(new MinimalPrettyPrinter(RECORD_SEPARATOR));
+        return new NdjsonRowWriter(generator, enabledFields);
+    }
+
+    /**
+     * Построчная запись NDJSON. Имена полей сериализуются один раз при открытии записи
+     */
+    private static class NdjsonRowWriter implements ExportRowWriter {
+        private final JsonGenerator generator;
+        private final String[] sourceFields;
+        private final SerializableString[] names;
+        private long rowCount;
+
+        private NdjsonRowWriter(JsonGenerator generator, List<ExportField> fields) {
+            this.generator = generator;
+            this.sourceFields = fields.stream().map(ExportField::getSourceField).toArray(String[]::new);
+            this.names = fields.stream()
+                    .map(field -> field.getDisplayName() != null && !field.getDisplayName().isBlank()
+                            ? field.getDisplayName() : field.getSourceField())
+                    .map(SerializedString::new)
+                    .toArray(SerializableString[]::new);
+        }
+
+        @Override
+        public void writeRow(Map<String, Object> row) throws IOException {
+            generator.writeStartObject();
+            for (int i = 0; i < sourceFields.length; i++) {
+                generator.writeFieldName(names[i]);
+                writeValue(row.get(sourceFields[i]));
+            }
+            generator.writeEndObject();
+            rowCount++;
+        }
+
+        private void writeValue(Object value) throws IOException {
+            if (value == null) {
+                generator.writeNull();
+            } else if (value instanceof String text) {
+                generator.writeString(text);
+            } else if (value instanceof Long number) {
+                generator.writeNumber(number);
+            } else if (value instanceof Double number) {
+                generator.writeNumber(number);
+            } else {
+                // Даты и прочие типы сериализуются настройками ObjectMapper приложения
+                generator.writeObject(value);
+            }
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (rowCount > 0) {
+                generator.writeRaw(RECORD_SEPARATOR);
+            }
+            generator.flush();
+        }
+
+        @Override
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package by.zoomos_v2.service.file.export.exporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Параллельное сжатие gzip по блокам (как в pigz).
+ * Данные делятся на блоки по BLOCK_SIZE, каждый блок сжимается в пуле потоков отдельным Deflater
+ * со словарем из последних 32 КБ предыдущего блока и завершается SYNC_FLUSH, поэтому сжатые блоки
+ * склеиваются в один поток deflate. Блоки пишутся строго по порядку, контрольная сумма считается
+ * в потоке записи. Результат - обычный однокомпонентный gzip.
+ * Блоки всех выгрузок сжимаются в одном общем пуле по числу ядер
+ */
+class ParallelGzipOutputStream extends OutputStream implements ExportCompression.AbortableStream {
+    private static final int BLOCK_SIZE = 128 * 1024;
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_PENDING_BLOCKS = THREADS * 2;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final OutputStream out;
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS, task -> {
+        Thread thread = new Thread(task, "export-gzip-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private byte[] dictionary;
+    private int length;
+    private long totalBytes;
+    private boolean closed;
+
+    ParallelGzipOutputStream(OutputStream out) throws IOException {
+        this.out = out;
+        out.write(GZIP_HEADER);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (length == block.length) {
+            submitBlock(false);
+        }
+        block[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (length == block.length) {
+                submitBlock(false);
+            }
+            int count = Math.min(len, block.length - length);
+            System.arraycopy(b, off, block, length, count);
+            length += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            submitBlock(true);
+            while (!pendingBlocks.isEmpty()) {
+                writeNextBlock();
+            }
+            writeTrailer();
+            out.close();
+        } finally {
+            cancelPendingBlocks();
+        }
+    }
+
+    /**
+     * Отменяет сжатие оставшихся блоков без записи окончания gzip
+     */
+    @Override
+    public void abort() {
+        closed = true;
+        cancelPendingBlocks();
+    }
+
+    private void cancelPendingBlocks() {
+        pendingBlocks.forEach(block -> block.cancel(true));
+        pendingBlocks.clear();
+    }
+
+    private void submitBlock(boolean last) throws IOException {
+        byte[] input = block;
+        int inputLength = length;
+        byte[] blockDictionary = dictionary;
+        crc.update(input, 0, inputLength);
+        totalBytes += inputLength;
+
+        // Словарь следующего блока - хвост текущего, как при последовательном сжатии
+        if (inputLength >= DICTIONARY_SIZE) {
+            dictionary = Arrays.copyOfRange(input, inputLength - DICTIONARY_SIZE, inputLength);
+        } else if (inputLength > 0) {
+            dictionary = input;
+        }
+        pendingBlocks.addLast(EXECUTOR.submit(() -> compressBlock(input, inputLength, blockDictionary, last)));
+        block = new byte[BLOCK_SIZE];
+        length = 0;
+
+        // Ограничиваем число блоков в памяти: ждем и пишем самый ранний
+        while (pendingBlocks.size() >= MAX_PENDING_BLOCKS) {
+            writeNextBlock();
+        }
+    }
+
+    private static byte[] compressBlock(byte[] input, int inputLength, byte[] dictionary, boolean last) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            if (dictionary != null) {
+                int dictionaryLength = Math.min(dictionary.length, DICTIONARY_SIZE);
+                deflater.setDictionary(dictionary, dictionary.length - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(input, 0, inputLength);
+            if (last) {
+                deflater.finish();
+            }
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(inputLength / 2 + 64);
+            byte[] buffer = new byte[BLOCK_SIZE];
+            while (true) {
+                int count = last ? deflater.deflate(buffer) : deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                compressed.write(buffer, 0, count);
+                if (last ? deflater.finished() : count < buffer.length) {
+                    break;
+                }
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private void writeNextBlock() throws IOException {
+        try {
+            out.write(pendingBlocks.removeFirst().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Сжатие экспорта прервано", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Ошибка сжатия блока экспорта: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void writeTrailer() throws IOException {
+        writeInt((int) crc.getValue());
+        writeInt((int) totalBytes);
+    }
+
+    private void writeInt(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+        out.write((value >>> 16) & 0xff);
+        out.write((value >>> 24) & 0xff);
+    }
+}
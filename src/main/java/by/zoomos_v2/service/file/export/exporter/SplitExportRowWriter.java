@@ -0,0 +1,227 @@
+package by.zoomos_v2.service.file.export.exporter;
+
+import by.zoomos_v2.model.ExportConfig;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Запись выгрузки частями с ограничением строк или размера части.
+ * Каждая часть пишется экспортером формата во временный файл; заполненная часть дописывается
+ * (для XLSX - сборка книги) в фоновом потоке, пока строки уже идут в следующую часть.
+ * В конце части складываются в zip-архив в исходном порядке.
+ * Размер части проверяется по уже записанным байтам; части пишутся без накопления строк
+ * (CSV - последовательно), поэтому лимит превышается не больше чем на буфер записи.
+ * Для форматов, которые собирают файл только при завершении (XLSX), фактически действует
+ * только ограничение строк
+ */
+@Slf4j
+public class SplitExportRowWriter implements ExportRowWriter {
+    private static final int FINISH_THREADS = 2;
+
+    private final DataExporter exporter;
+    private final ExportConfig exportConfig;
+    private final OutputStream outputStream;
+    private final String baseName;
+    private final String extension;
+    private final ExportSplitPolicy policy;
+    private final ExecutorService finishExecutor = Executors.newFixedThreadPool(FINISH_THREADS);
+    private final List<Part> parts = new ArrayList<>();
+    private Part current;
+    private long rowCount;
+
+    /**
+     * @param exporter     экспортер формата частей
+     * @param exportConfig конфигурация экспорта
+     * @param outputStream поток для записи zip-архива частей
+     * @param fileName     имя файла части без номера (например, export.csv)
+     * @param policy       политика разбиения
+     */
+    public SplitExportRowWriter(DataExporter exporter, ExportConfig exportConfig, OutputStream outputStream,
+                                String fileName, ExportSplitPolicy policy) {
+        this.exporter = exporter;
+        this.exportConfig = exportConfig;
+        this.outputStream = outputStream;
+        this.policy = policy;
+        int dot = fileName.lastIndexOf('.');
+        this.baseName = dot > 0 ? fileName.substring(0, dot) : fileName;
+        this.extension = dot > 0 ? fileName.substring(dot) : "";
+    }
+
+    @Override
+    public void writeRow(Map<String, Object> row) throws IOException {
+        if (current == null || isFull(current)) {
+            startPart();
+        }
+        current.writer.writeRow(row);
+        current.rows++;
+        rowCount++;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (current == null) {
+            startPart();
+        }
+        submitFinish(current);
+        current = null;
+
+        try (ZipOutputStream zip = new ZipOutputStream(new NonClosingOutputStream(outputStream))) {
+            for (Part part : parts) {
+                awaitFinish(part);
+                zip.putNextEntry(new ZipEntry(part.name));
+                Files.copy(part.file, zip);
+                zip.closeEntry();
+                part.bytes = Files.size(part.file);
+                Files.deleteIfExists(part.file);
+            }
+        }
+        outputStream.flush();
+        log.info("Выгрузка разбита на {} частей, строк: {}", parts.size(), rowCount);
+    }
+
+    @Override
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public List<Map<String, Object>> getSplitPoints() {
+        List<Map<String, Object>> splitPoints = new ArrayList<>(parts.size());
+        for (Part part : parts) {
+            Map<String, Object> splitPoint = new LinkedHashMap<>();
+            splitPoint.put("file", part.name);
+            splitPoint.put("firstRow", part.firstRow);
+            splitPoint.put("rows", part.rows);
+            splitPoint.put("bytes", part.bytes);
+            if (!part.sheets.isEmpty()) {
+                splitPoint.put("sheets", part.sheets);
+            }
+            splitPoints.add(splitPoint);
+        }
+        return splitPoints;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finishExecutor.shutdownNow();
+        for (Part part : parts) {
+            if (part.finishing == null) {
+                closeQuietly(part);
+            }
+            try {
+                Files.deleteIfExists(part.file);
+            } catch (IOException e) {
+                log.warn("Не удалось удалить временный файл части {}: {}", part.file, e.getMessage());
+            }
+        }
+    }
+
+    private boolean isFull(Part part) {
+        return (policy.maxRowsPerFile() != null && part.rows >= policy.maxRowsPerFile())
+                || (policy.maxBytesPerFile() != null && part.counter.count >= policy.maxBytesPerFile());
+    }
+
+    private void startPart() throws IOException {
+        if (current != null) {
+            submitFinish(current);
+        }
+        int number = parts.size() + 1;
+        Path file = Files.createTempFile("export-part-" + number + "-", extension);
+        CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        current = new Part(baseName + "_part" + number + extension, file, counter, rowCount + 1);
+        parts.add(current);
+        current.writer = exporter.openPartWriter(counter, exportConfig);
+        log.debug("Начата часть выгрузки {}", current.name);
+    }
+
+    /**
+     * Завершение части (для XLSX - самая долгая операция) выполняется параллельно с записью следующей
+     */
+    private void submitFinish(Part part) {
+        part.finishing = finishExecutor.submit(() -> {
+            try (part.counter; ExportRowWriter writer = part.writer) {
+                writer.finish();
+                part.sheets = writer.getSplitPoints();
+            }
+            return null;
+        });
+    }
+
+    private void awaitFinish(Part part) throws IOException {
+        try {
+            part.finishing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Запись части выгрузки прервана", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Ошибка записи части " + part.name + ": " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void closeQuietly(Part part) {
+        ExportRowWriter writer = part.writer;
+        try (part.counter; writer) {
+            log.trace("Закрытие незавершенной части {}", part.name);
+        } catch (IOException e) {
+            log.warn("Ошибка закрытия части {}: {}", part.name, e.getMessage());
+        }
+    }
+
+    private static class Part {
+        private final String name;
+        private final Path file;
+        private final CountingOutputStream counter;
+        private final long firstRow;
+        private ExportRowWriter writer;
+        private Future<?> finishing;
+        private volatile List<Map<String, Object>> sheets = List.of();
+        private long rows;
+        private long bytes;
+
+        private Part(String name, Path file, CountingOutputStream counter, long firstRow) {
+            this.name = name;
+            this.file = file;
+            this.counter = counter;
+            this.firstRow = firstRow;
+        }
+    }
+
+    /**
+     * Считает байты, записанные в часть
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        private volatile long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -6,7 +6,6 @@ import lombok.extern.slf4j.Slf4j;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.streaming.SXSSFWorkbook;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
@@ -14,23 +13,28 @@ import java.io.OutputStream;
 import java.rmi.server.ExportException;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
- * Реализация экспортера для XLSX формата
+ * Реализация экспортера для XLSX формата.
+ * Строки всегда пишутся потоково через SXSSFWorkbook, поэтому память ограничена окном строк
+ * независимо от размера выгрузки. Стили создаются для каждой книги отдельно.
+ * При достижении лимита строк листа (лимит Excel или maxRowsPerSheet) строки продолжаются на новом листе
  */
 @Slf4j
 @Component
 public class XLSXDataExporter extends AbstractDataExporter {
 
     private static final String FILE_TYPE = "XLSX";
-    private static final int BATCH_SIZE = 1000;
-    private static final int DEFAULT_COLUMN_WIDTH = 256 * 20;
-    private static final int LARGE_FILE_THRESHOLD = 10000;
-    private static final Map<String, CellStyle> styleCache = new ConcurrentHashMap<>();
+    private static final String SHEET_NAME = "Export";
+    private static final int ROW_ACCESS_WINDOW = 100;
+    private static final int PROGRESS_LOG_INTERVAL = 5000;
+    private static final int WIDTH_SAMPLE_ROWS = 1000;
+    private static final int MIN_COLUMN_CHARS = 8;
+    private static final int MAX_COLUMN_CHARS = 80;
 
     /**
      * Экспортирует данные в XLSX формат с оптимизацией памяти
@@ -42,27 +46,27 @@ public class XLSXDataExporter extends AbstractDataExporter {
                             OutputStream outputStream,
                             ExportConfig exportConfig) throws ExportException {
         log.info("Начало экспорта данных. Записей: {}", data.size());
-        Workbook workbook = null;
-
         try {
-            workbook = createOptimizedWorkbook(data.size());
-            Sheet sheet = workbook.createSheet("Export");
-            List<ExportField> enabledFields = getEnabledFields(exportConfig);
-
-            exportDataInBatches(sheet, data, enabledFields);
-
-            workbook.write(outputStream);
-            outputStream.flush();
+            exportRows(data.iterator(), outputStream, exportConfig);
             log.info("Экспорт успешно завершен");
-
         } catch (Exception e) {
             log.error("Критическая ошибка экспорта: {}", e.getMessage(), e);
             throw new ExportException("Ошибка экспорта", e);
-        } finally {
-            closeResources(workbook, data);
         }
     }
 
+    /**
+     * Открывает потоковую запись XLSX: в памяти держится только окно последних строк,
+     * остальные строки сбрасываются во временный файл
+     */
+    @Override
+    public ExportRowWriter openRowWriter(OutputStream outputStream, ExportConfig exportConfig) {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_ACCESS_WINDOW);
+        workbook.setCompressTempFiles(true);
+        int maxRowsPerSheet = ExportSplitPolicy.resolve(exportConfig.getParams()).maxRowsPerSheet();
+        return new XlsxRowWriter(workbook, outputStream, getEnabledFields(exportConfig), maxRowsPerSheet);
+    }
+
     private List<ExportField> getEnabledFields(ExportConfig exportConfig) {
         return exportConfig.getFields().stream()
                 .filter(ExportField::isEnabled)
@@ -70,92 +74,6 @@ public class XLSXDataExporter extends AbstractDataExporter {
                 .collect(Collectors.toList());
     }
 
-    private Workbook createOptimizedWorkbook(int rowCount) {
-        log.debug("Создание {} для {} строк",
-                rowCount > LARGE_FILE_THRESHOLD ? "SXSSFWorkbook" : "XSSFWorkbook",
-                rowCount);
-
-        if (rowCount > LARGE_FILE_THRESHOLD) {
-            SXSSFWorkbook workbook = new SXSSFWorkbook(100);
-            workbook.setCompressTempFiles(true);
-            return workbook;
-        }
-        return new XSSFWorkbook();
-    }
-
-    private void exportDataInBatches(Sheet sheet,
-                                     List<Map<String, Object>> data,
-                                     List<ExportField> fields) throws ExportException {
-        int processedRows = 0;
-        CellStyle headerStyle = getOrCreateStyle("header", sheet.getWorkbook());
-        CellStyle dataStyle = getOrCreateStyle("data", sheet.getWorkbook());
-
-        createHeaderRow(sheet, fields, headerStyle);
-
-        for (List<Map<String, Object>> batch : getBatches(data)) {
-            try {
-                processBatch(sheet, batch, fields, dataStyle, processedRows + 1);
-                processedRows += batch.size();
-
-                if (processedRows % (BATCH_SIZE * 5) == 0) {
-                    log.info("Прогресс: {} из {} строк", processedRows, data.size());
-                }
-            } catch (Exception e) {
-                log.error("Ошибка обработки батча на строке {}: {}",
-                        processedRows, e.getMessage());
-            }
-        }
-
-        applyFormatting(sheet, processedRows, fields.size());
-    }
-
-    private List<List<Map<String, Object>>> getBatches(List<Map<String, Object>> data) {
-        List<List<Map<String, Object>>> batches = new ArrayList<>();
-        for (int i = 0; i < data.size(); i += BATCH_SIZE) {
-            batches.add(data.subList(i, Math.min(data.size(), i + BATCH_SIZE)));
-        }
-        return batches;
-    }
-
-    private void createHeaderRow(Sheet sheet,
-                                 List<ExportField> fields,
-                                 CellStyle style) throws ExportException {
-        try {
-            Row headerRow = sheet.createRow(0);
-            for (int i = 0; i < fields.size(); i++) {
-                Cell cell = headerRow.createCell(i);
-                cell.setCellValue(fields.get(i).getDisplayName());
-                cell.setCellStyle(style);
-                sheet.setColumnWidth(i, DEFAULT_COLUMN_WIDTH);
-            }
-        } catch (Exception e) {
-            log.error("Ошибка создания заголовков: {}", e.getMessage());
-            throw new ExportException("Ошибка заголовков", e);
-        }
-    }
-
-    private void processBatch(Sheet sheet,
-                              List<Map<String, Object>> batch,
-                              List<ExportField> fields,
-                              CellStyle style,
-                              int startRow) {
-        log.debug("Обработка строк {}-{}", startRow, startRow + batch.size() - 1);
-
-        for (Map<String, Object> record : batch) {
-            try {
-                Row row = sheet.createRow(startRow++);
-                for (int i = 0; i < fields.size(); i++) {
-                    Cell cell = row.createCell(i);
-                    setOptimizedCellValue(cell,
-                            record.get(fields.get(i).getSourceField()));
-                    cell.setCellStyle(style);
-                }
-            } catch (Exception e) {
-                log.warn("Ошибка в строке {}: {}", startRow, e.getMessage());
-            }
-        }
-    }
-
     private void setOptimizedCellValue(Cell cell, Object value) {
         try {
             if (value == null) {
@@ -173,11 +91,6 @@ public class XLSXDataExporter extends AbstractDataExporter {
         }
     }
 
-    private CellStyle getOrCreateStyle(String type, Workbook workbook) {
-        return styleCache.computeIfAbsent(type, k ->
-                createStyle(workbook, "header".equals(type)));
-    }
-
     private CellStyle createStyle(Workbook workbook, boolean isHeader) {
         CellStyle style = workbook.createCellStyle();
         if (isHeader) {
@@ -190,39 +103,126 @@ public class XLSXDataExporter extends AbstractDataExporter {
         return style;
     }
 
-    private void applyFormatting(Sheet sheet, int rows, int cols) {
-        try {
-            if (rows > 0) {
-                sheet.setAutoFilter(new CellRangeAddress(0, rows, 0, cols - 1));
+    @Override
+    public String getFileType() {
+        return FILE_TYPE;
+    }
+
+    /**
+     * Построчная запись XLSX через SXSSFWorkbook.
+     * Ширина колонок считается по длине значений первых WIDTH_SAMPLE_ROWS строк вместо autoSizeColumn
+     */
+    private class XlsxRowWriter implements ExportRowWriter {
+        private final SXSSFWorkbook workbook;
+        private final OutputStream outputStream;
+        private final List<ExportField> fields;
+        private final int maxRowsPerSheet;
+        private final CellStyle headerStyle;
+        private final CellStyle dataStyle;
+        private final int[] columnChars;
+        private final List<Map<String, Object>> splitPoints = new ArrayList<>();
+        private Sheet sheet;
+        private int sheetRowCount;
+        private int rowCount;
+
+        private XlsxRowWriter(SXSSFWorkbook workbook, OutputStream outputStream, List<ExportField> fields,
+                              int maxRowsPerSheet) {
+            this.workbook = workbook;
+            this.outputStream = outputStream;
+            this.fields = fields;
+            this.maxRowsPerSheet = maxRowsPerSheet;
+            this.headerStyle = createStyle(workbook, true);
+            this.dataStyle = createStyle(workbook, false);
+            this.columnChars = new int[fields.size()];
+            for (int i = 0; i < fields.size(); i++) {
+                String displayName = fields.get(i).getDisplayName();
+                columnChars[i] = displayName != null ? displayName.length() : 0;
             }
-            if (rows <= LARGE_FILE_THRESHOLD) {
-                for (int i = 0; i < cols; i++) {
-                    sheet.autoSizeColumn(i);
-                }
+            startSheet();
+        }
+
+        private void startSheet() {
+            int sheetNumber = workbook.getNumberOfSheets() + 1;
+            sheet = workbook.createSheet(sheetNumber == 1 ? SHEET_NAME : SHEET_NAME + "_" + sheetNumber);
+            sheetRowCount = 0;
+
+            Row headerRow = sheet.createRow(0);
+            for (int i = 0; i < fields.size(); i++) {
+                Cell cell = headerRow.createCell(i);
+                cell.setCellValue(fields.get(i).getDisplayName());
+                cell.setCellStyle(headerStyle);
             }
-        } catch (Exception e) {
-            log.warn("Ошибка форматирования: {}", e.getMessage());
         }
-    }
 
-    private void closeResources(Workbook workbook, List<Map<String, Object>> data) {
-        try {
-            if (workbook instanceof SXSSFWorkbook) {
-                ((SXSSFWorkbook) workbook).dispose();
+        /**
+         * Оформляет заполненный лист и запоминает его границы в выгрузке
+         */
+        private void completeSheet() {
+            if (sheetRowCount > 0 && !fields.isEmpty()) {
+                sheet.setAutoFilter(new CellRangeAddress(0, sheetRowCount, 0, fields.size() - 1));
             }
-            if (workbook != null) {
-                workbook.close();
+            Map<String, Object> splitPoint = new LinkedHashMap<>();
+            splitPoint.put("sheet", sheet.getSheetName());
+            splitPoint.put("firstRow", rowCount - sheetRowCount + 1);
+            splitPoint.put("rows", sheetRowCount);
+            splitPoints.add(splitPoint);
+        }
+
+        @Override
+        public void writeRow(Map<String, Object> record) {
+            if (sheetRowCount >= maxRowsPerSheet) {
+                completeSheet();
+                startSheet();
+                log.debug("Лимит строк листа достигнут, создан лист {}", sheet.getSheetName());
+            }
+            rowCount++;
+            Row row = sheet.createRow(++sheetRowCount);
+            boolean sample = rowCount <= WIDTH_SAMPLE_ROWS;
+            for (int i = 0; i < fields.size(); i++) {
+                Object value = record.get(fields.get(i).getSourceField());
+                Cell cell = row.createCell(i);
+                setOptimizedCellValue(cell, value);
+                cell.setCellStyle(dataStyle);
+                if (sample && value != null) {
+                    columnChars[i] = Math.max(columnChars[i], value.toString().length());
+                }
+            }
+
+            if (rowCount % PROGRESS_LOG_INTERVAL == 0) {
+                log.debug("Записано строк XLSX: {}", rowCount);
             }
-            data.clear();
-            styleCache.clear();
-            System.gc();
-        } catch (Exception e) {
-            log.warn("Ошибка закрытия ресурсов: {}", e.getMessage());
         }
-    }
 
-    @Override
-    public String getFileType() {
-        return FILE_TYPE;
+        @Override
+        public void finish() throws IOException {
+            completeSheet();
+            for (Sheet workbookSheet : workbook) {
+                for (int i = 0; i < columnChars.length; i++) {
+                    int chars = Math.min(MAX_COLUMN_CHARS, Math.max(MIN_COLUMN_CHARS, columnChars[i] + 2));
+                    workbookSheet.setColumnWidth(i, chars * 256);
+                }
+            }
+            workbook.write(outputStream);
+            outputStream.flush();
+        }
+
+        @Override
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Листы возвращаются, только если выгрузка не поместилась на один лист
+         */
+        @Override
+        public List<Map<String, Object>> getSplitPoints() {
+            return splitPoints.size() > 1 ? splitPoints : List.of();
+        }
+
+        @Override
+        public void close() throws IOException {
+            workbook.dispose();
+            workbook.close();
+        }
     }
 }
@@ -0,0 +1,364 @@
+package by.zoomos_v2.service.file.export.service;
+
+import by.zoomos_v2.model.ExportConfig;
+import by.zoomos_v2.model.ExportField;
+import by.zoomos_v2.util.PathResolver;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Дисковый кэш готовых файлов экспорта.
+ * Ключ - хэш файлов, конфигурации, параметров, формата и версий данных, поэтому повторное
+ * скачивание того же экспорта отдается с диска без чтения БД.
+ * Версии данных файлов и общих данных (задания, справочник) хранятся в памяти и увеличиваются
+ * при переимпорте или удалении файла и при обновлении общих данных; устаревшие записи удаляются сразу.
+ * Размер кэша ограничен, при превышении вытесняются давно не использованные файлы
+ */
+@Slf4j
+@Service
+public class ExportCacheService {
+    private static final String CACHE_DIRECTORY = "export-cache";
+
+    private final PathResolver pathResolver;
+    private final boolean enabled;
+    private final long maxSizeBytes;
+
+    private final Map<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Long> fileVersions = new ConcurrentHashMap<>();
+    private final AtomicLong sharedDataVersion = new AtomicLong();
+    private long totalSize;
+    private Path cacheDirectory;
+
+    public ExportCacheService(PathResolver pathResolver,
+                              @Value("${app.export.cache.enabled:true}") boolean enabled,
+                              @Value("${app.export.cache.max-size-mb:1024}") long maxSizeMb) {
+        this.pathResolver = pathResolver;
+        this.enabled = enabled;
+        this.maxSizeBytes = maxSizeMb * 1024 * 1024;
+    }
+
+    /**
+     * Версии данных живут только в памяти, поэтому файлы прошлого запуска не используются
+     */
+    @PostConstruct
+    public void init() {
+        cacheDirectory = pathResolver.getUploadDirectory().resolve(CACHE_DIRECTORY);
+        try {
+            if (Files.exists(cacheDirectory)) {
+                try (Stream<Path> files = Files.list(cacheDirectory)) {
+                    files.forEach(this::deleteQuietly);
+                }
+            }
+            Files.createDirectories(cacheDirectory);
+            log.info("Кэш экспорта: {}, лимит {} МБ", cacheDirectory, maxSizeBytes / (1024 * 1024));
+        } catch (IOException e) {
+            log.error("Не удалось подготовить директорию кэша экспорта {}: {}", cacheDirectory, e.getMessage());
+        }
+    }
+
+    /**
+     * Формирует ключ кэша по входным данным экспорта
+     *
+     * @param fileIds      Список ID файлов для экспорта
+     * @param exportConfig конфигурация экспорта с параметрами запроса
+     * @param fileType     тип экспорта (CSV, XLSX)
+     * @param sharedData   зависит ли результат от общих данных (задания, справочник)
+     * @return ключ кэша
+     */
+    public String buildKey(List<Long> fileIds, ExportConfig exportConfig, String fileType, boolean sharedData) {
+        StringBuilder source = new StringBuilder();
+        source.append("type=").append(fileType.toUpperCase()).append('\n');
+        source.append("config=").append(exportConfig.getId())
+                .append('@').append(exportConfig.getUpdatedAt()).append('\n');
+        source.append("strategy=").append(exportConfig.getStrategyTypes()).append('\n');
+
+        // Поля учитываются явно: их изменение не всегда обновляет дату конфигурации
+        exportConfig.getFields().stream()
+                .sorted(Comparator.comparingInt(ExportField::getPosition))
+                .forEach(field -> source.append("field=").append(field.getSourceField())
+                        .append('|').append(field.getDisplayName())
+                        .append('|').append(field.getPosition())
+                        .append('|').append(field.isEnabled()).append('\n'));
+        new TreeMap<>(exportConfig.getParams())
+                .forEach((key, value) -> source.append("param=").append(key).append('=').append(value).append('\n'));
+
+        for (Long fileId : fileIds) {
+            source.append("file=").append(fileId).append('@').append(fileVersions.getOrDefault(fileId, 0L)).append('\n');
+        }
+        if (sharedData) {
+            source.append("shared=").append(sharedDataVersion.get()).append('\n');
+        }
+
+        return DigestUtils.sha256Hex(source.toString());
+    }
+
+    /**
+     * Открывает готовый файл из кэша для чтения.
+     * Файл открывается под блокировкой кэша: вытеснение или сброс записи во время передачи
+     * удаляет только имя файла, открытый канал дочитывает данные до конца
+     *
+     * @param key ключ кэша
+     * @return канал чтения файла или null, если файла нет в кэше
+     */
+    public synchronized FileChannel open(String key) {
+        if (!enabled) {
+            return null;
+        }
+        CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        try {
+            FileChannel channel = FileChannel.open(entry.path(), StandardOpenOption.READ);
+            log.debug("Экспорт найден в кэше: {}", key);
+            return channel;
+        } catch (IOException e) {
+            log.warn("Не удалось открыть файл кэша экспорта {}: {}", entry.path(), e.getMessage());
+            removeEntry(key);
+            return null;
+        }
+    }
+
+    /**
+     * Записывает экспорт в выходной поток и одновременно сохраняет его в кэш.
+     * Ошибка записи в кэш не прерывает экспорт, незавершенный файл кэша удаляется
+     *
+     * @param key          ключ кэша
+     * @param fileIds      Список ID файлов, от которых зависит результат
+     * @param sharedData   зависит ли результат от общих данных (задания, справочник)
+     * @param outputStream поток для записи результата
+     * @param writer       формирование экспорта
+     */
+    public void writeThrough(String key, List<Long> fileIds, boolean sharedData,
+                             OutputStream outputStream, ExportWriter writer) throws IOException {
+        if (!enabled || cacheDirectory == null) {
+            writer.write(outputStream);
+            return;
+        }
+
+        // Версии на момент начала экспорта: если данные изменятся во время записи, ключ устареет
+        long startSharedVersion = sharedDataVersion.get();
+        Map<Long, Long> startFileVersions = new TreeMap<>();
+        fileIds.forEach(fileId -> startFileVersions.put(fileId, fileVersions.getOrDefault(fileId, 0L)));
+
+        Path tempFile = cacheDirectory.resolve(key + "." + UUID.randomUUID() + ".tmp");
+        TeeOutputStream teeStream = new TeeOutputStream(outputStream, tempFile);
+        try {
+            writer.write(teeStream);
+        } catch (IOException | RuntimeException e) {
+            teeStream.discardCopy();
+            throw e;
+        }
+
+        if (!teeStream.finishCopy()) {
+            return;
+        }
+        boolean stale = (sharedData && sharedDataVersion.get() != startSharedVersion)
+                || startFileVersions.entrySet().stream()
+                .anyMatch(e -> !e.getValue().equals(fileVersions.getOrDefault(e.getKey(), 0L)));
+        if (stale) {
+            log.debug("Данные изменились во время экспорта, результат не кэшируется: {}", key);
+            deleteQuietly(tempFile);
+            return;
+        }
+        put(key, tempFile, Set.copyOf(fileIds), sharedData);
+    }
+
+    /**
+     * Сбрасывает кэш экспорта файла после переимпорта или удаления его данных
+     *
+     * @param fileId ID файла
+     */
+    public void invalidateFile(Long fileId) {
+        fileVersions.merge(fileId, 1L, Long::sum);
+        int removed = removeEntries(entry -> entry.fileIds().contains(fileId));
+        log.debug("Кэш экспорта сброшен для файла {}. Удалено записей: {}", fileId, removed);
+    }
+
+    /**
+     * Сбрасывает кэш экспортов, зависящих от общих данных (задания, справочник)
+     */
+    public void invalidateSharedData() {
+        sharedDataVersion.incrementAndGet();
+        int removed = removeEntries(CacheEntry::sharedData);
+        log.debug("Кэш экспорта сброшен после изменения общих данных. Удалено записей: {}", removed);
+    }
+
+    private synchronized void put(String key, Path tempFile, Set<Long> fileIds, boolean sharedData) throws IOException {
+        long size = Files.size(tempFile);
+        if (size > maxSizeBytes) {
+            log.debug("Файл экспорта {} байт больше лимита кэша, не кэшируется", size);
+            deleteQuietly(tempFile);
+            return;
+        }
+
+        Path target = cacheDirectory.resolve(key);
+        Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+        CacheEntry previous = entries.put(key, new CacheEntry(target, size, fileIds, sharedData));
+        if (previous != null) {
+            totalSize -= previous.size();
+        }
+        totalSize += size;
+
+        // Вытесняем давно не использованные файлы
+        Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+        while (totalSize > maxSizeBytes && iterator.hasNext()) {
+            Map.Entry<String, CacheEntry> eldest = iterator.next();
+            if (eldest.getKey().equals(key)) {
+                continue;
+            }
+            iterator.remove();
+            totalSize -= eldest.getValue().size();
+            deleteQuietly(eldest.getValue().path());
+        }
+        log.debug("Экспорт сохранен в кэш: {} ({} байт), всего в кэше {} байт", key, size, totalSize);
+    }
+
+    private synchronized int removeEntries(Predicate<CacheEntry> condition) {
+        int removed = 0;
+        Iterator<Map.Entry<String, CacheEntry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            CacheEntry entry = iterator.next().getValue();
+            if (condition.test(entry)) {
+                iterator.remove();
+                totalSize -= entry.size();
+                deleteQuietly(entry.path());
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private void removeEntry(String key) {
+        CacheEntry entry = entries.remove(key);
+        if (entry != null) {
+            totalSize -= entry.size();
+            deleteQuietly(entry.path());
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить файл кэша экспорта {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Формирование экспорта в выходной поток
+     */
+    @FunctionalInterface
+    public interface ExportWriter {
+        void write(OutputStream outputStream) throws IOException;
+    }
+
+    private record CacheEntry(Path path, long size, Set<Long> fileIds, boolean sharedData) {
+    }
+
+    /**
+     * Поток, дублирующий данные в файл кэша.
+     * Ошибки записи в файл только отключают копию, ответ клиенту продолжает писаться
+     */
+    private class TeeOutputStream extends OutputStream {
+        private final OutputStream target;
+        private final Path copyFile;
+        private OutputStream copy;
+
+        private TeeOutputStream(OutputStream target, Path copyFile) {
+            this.target = target;
+            this.copyFile = copyFile;
+            try {
+                this.copy = Files.newOutputStream(copyFile);
+            } catch (IOException e) {
+                log.warn("Не удалось создать файл кэша экспорта {}: {}", copyFile, e.getMessage());
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+            if (copy != null) {
+                try {
+                    copy.write(b);
+                } catch (IOException e) {
+                    discardCopy();
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target.write(b, off, len);
+            if (copy != null) {
+                try {
+                    copy.write(b, off, len);
+                } catch (IOException e) {
+                    discardCopy();
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+
+        /**
+         * Экспортеры закрывают поток после записи, но файл кэша завершается только через finishCopy
+         */
+        @Override
+        public void close() throws IOException {
+            target.flush();
+        }
+
+        private boolean finishCopy() {
+            if (copy == null) {
+                return false;
+            }
+            try {
+                copy.close();
+                copy = null;
+                return true;
+            } catch (IOException e) {
+                discardCopy();
+                return false;
+            }
+        }
+
+        private void discardCopy() {
+            if (copy != null) {
+                try {
+                    copy.close();
+                } catch (IOException e) {
+                    log.trace("Ошибка закрытия файла кэша: {}", e.getMessage());
+                }
+                copy = null;
+            }
+            deleteQuietly(copyFile);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package by.zoomos_v2.service.file.export.service;
+
+import by.zoomos_v2.model.ExportConfig;
+import by.zoomos_v2.model.operation.ExportOperation;
+import by.zoomos_v2.util.PathResolver;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Сервис фоновых задач экспорта.
+ * Файл экспорта формируется в отдельном пуле потоков и сохраняется в директорию магазина,
+ * откуда затем отдается по ID операции
+ */
+@Slf4j
+@Service
+public class ExportJobService {
+    private static final String EXPORT_DIRECTORY = "exports";
+
+    private final FileExportService fileExportService;
+    private final PathResolver pathResolver;
+    private final Executor exportExecutor;
+
+    public ExportJobService(FileExportService fileExportService,
+                            PathResolver pathResolver,
+                            @Qualifier("exportExecutor") Executor exportExecutor) {
+        this.fileExportService = fileExportService;
+        this.pathResolver = pathResolver;
+        this.exportExecutor = exportExecutor;
+    }
+
+    /**
+     * Проверяет параметры, создает операцию и ставит экспорт в очередь
+     *
+     * @param fileIds      Список ID файлов для экспорта
+     * @param exportConfig конфигурация экспорта
+     * @param fileType     тип экспорта (CSV, XLSX)
+     * @return созданная операция экспорта
+     */
+    public ExportOperation startExport(List<Long> fileIds, ExportConfig exportConfig, String fileType)
+            throws IOException {
+        String fileName = fileExportService.prepareStreamingExport(fileIds, exportConfig, fileType);
+        ExportOperation operation = fileExportService.createExportOperation(fileIds, exportConfig, fileType);
+        operation.getMetadata().put("fileName", fileName);
+
+        try {
+            exportExecutor.execute(() -> runExport(operation, fileIds, exportConfig, fileType, fileName));
+        } catch (RuntimeException e) {
+            fileExportService.failExport(operation, e);
+            throw e;
+        }
+
+        log.info("Экспорт поставлен в очередь. Операция: {}, файлы: {}", operation.getId(), fileIds);
+        return operation;
+    }
+
+    private void runExport(ExportOperation operation, List<Long> fileIds, ExportConfig exportConfig,
+                           String fileType, String fileName) {
+        Path targetFile = null;
+        try {
+            Path exportDirectory = pathResolver.getClientDirectory(operation.getClientId()).resolve(EXPORT_DIRECTORY);
+            Files.createDirectories(exportDirectory);
+            targetFile = exportDirectory.resolve(operation.getId() + "_" + fileName);
+
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(targetFile))) {
+                fileExportService.writeExport(operation, fileIds, exportConfig, fileType, fileName, outputStream);
+            }
+
+            fileExportService.completeExport(operation, targetFile.toString(), Files.size(targetFile));
+            log.info("Экспорт {} сохранен в {}", operation.getId(), targetFile);
+
+        } catch (Exception e) {
+            fileExportService.failExport(operation, e);
+            deleteQuietly(targetFile);
+        }
+    }
+
+    private void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Не удалось удалить незавершенный файл экспорта {}: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package by.zoomos_v2.service.file.export.service;
+
+/**
+ * Фильтр строк экспорта, выполняемый в запросе к БД.
+ * Строки отчета отбираются полусоединением с данными задания (только совпавшие по коду
+ * розничной сети строки возвращаются из БД), а название сети и регион подставляются
+ * соединением со справочником розничных сетей
+ *
+ * @param taskNumber          номер задания (product_additional1 товаров задания)
+ * @param enrichFromDirectory подставлять данные справочника розничных сетей
+ */
+public record ExportQueryFilter(String taskNumber, boolean enrichFromDirectory) {
+
+    /**
+     * Фильтр по заданию с обогащением из справочника
+     */
+    public static ExportQueryFilter forTask(String taskNumber) {
+        return new ExportQueryFilter(taskNumber, true);
+    }
+}
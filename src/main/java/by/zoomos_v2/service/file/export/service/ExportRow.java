@@ -0,0 +1,154 @@
+package by.zoomos_v2.service.file.export.service;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Строка экспорта на массиве значений.
+ * Значения лежат в массиве по позициям колонок запроса, индекс ключей общий для всех строк запроса,
+ * поэтому построение строки не требует создания и копирования HashMap.
+ * Ключи, которых нет в запросе (например, добавленные стратегией), хранятся в дополнительной карте.
+ * Пустые значения считаются отсутствующими, как и в обычной карте строки.
+ */
+public class ExportRow extends AbstractMap<String, Object> {
+
+    private final Layout layout;
+    private final Object[] values;
+    private Map<String, Object> extra;
+
+    ExportRow(Layout layout, Object[] values) {
+        this.layout = layout;
+        this.values = values;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int position = layout.positionOf(key);
+        if (position >= 0) {
+            return values[position];
+        }
+        return extra != null ? extra.get(key) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int position = layout.positionOf(key);
+        if (position >= 0) {
+            return values[position] != null;
+        }
+        return extra != null && extra.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        int position = layout.positionOf(key);
+        if (position >= 0) {
+            Object previous = values[position];
+            values[position] = value;
+            return previous;
+        }
+        if (extra == null) {
+            extra = new HashMap<>();
+        }
+        return extra.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        int position = layout.positionOf(key);
+        if (position >= 0) {
+            Object previous = values[position];
+            values[position] = null;
+            return previous;
+        }
+        return extra != null ? extra.remove(key) : null;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                int size = extra != null ? extra.size() : 0;
+                for (Object value : values) {
+                    if (value != null) {
+                        size++;
+                    }
+                }
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Обходит заполненные колонки запроса, затем дополнительные ключи
+     */
+    private class EntryIterator implements Iterator<Entry<String, Object>> {
+        private int position = nextFilled(0);
+        private Iterator<Entry<String, Object>> extraIterator;
+
+        @Override
+        public boolean hasNext() {
+            if (position < values.length) {
+                return true;
+            }
+            if (extraIterator == null) {
+                extraIterator = extra != null ? extra.entrySet().iterator() : Map.<String, Object>of().entrySet().iterator();
+            }
+            return extraIterator.hasNext();
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (position < values.length) {
+                Entry<String, Object> entry = new SimpleEntry<>(layout.keys[position], values[position]);
+                position = nextFilled(position + 1);
+                return entry;
+            }
+            return extraIterator.next();
+        }
+
+        private int nextFilled(int from) {
+            int next = from;
+            while (next < values.length && values[next] == null) {
+                next++;
+            }
+            return next;
+        }
+    }
+
+    /**
+     * Общий для всех строк запроса порядок колонок и индекс ключей
+     */
+    static final class Layout {
+        private final String[] keys;
+        private final Map<String, Integer> positions;
+
+        Layout(List<String> keys) {
+            this.keys = keys.toArray(String[]::new);
+            this.positions = new HashMap<>(keys.size() * 2);
+            for (int i = 0; i < this.keys.length; i++) {
+                positions.put(this.keys[i], i);
+            }
+        }
+
+        private int positionOf(Object key) {
+            Integer position = positions.get(key);
+            return position != null ? position : -1;
+        }
+    }
+}
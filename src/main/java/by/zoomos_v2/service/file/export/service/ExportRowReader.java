@@ -0,0 +1,426 @@
+package by.zoomos_v2.service.file.export.service;
+
+import by.zoomos_v2.annotations.FieldDescription;
+import by.zoomos_v2.model.entity.CompetitorData;
+import by.zoomos_v2.model.entity.Product;
+import by.zoomos_v2.model.entity.RegionData;
+import by.zoomos_v2.model.enums.DataSourceType;
+import by.zoomos_v2.util.EntityRegistryService;
+import jakarta.persistence.Column;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Потоковое чтение строк экспорта из БД.
+ * Товары, региональные данные и данные конкурентов выбираются одним плоским запросом
+ * через однонаправленный курсор, поэтому в памяти находится только текущая порция строк.
+ * Выбираются только колонки запрошенных полей, а таблицы регионов и конкурентов
+ * присоединяются, только если из них запрошено хотя бы одно поле.
+ * Таблица колонок и способы чтения значений строятся один раз при старте по сущностям
+ * из EntityRegistryService, строка заполняется в массив по позициям колонок без рефлексии.
+ * Ключи строк совпадают с ключами маппинга экспорта: product.*, regiondata.*, competitordata.*
+ * При заданном ExportQueryFilter отбор строк по заданию и обогащение справочником розничных
+ * сетей выполняются в том же запросе, и из БД возвращаются только совпавшие строки.
+ * При чтении нескольких файлов следующий файл читается с упреждением в общем пуле,
+ * строки передаются обработчику в порядке запрошенных файлов из одного потока
+ */
+@Slf4j
+@Component
+public class ExportRowReader {
+    private static final int FETCH_SIZE = 1000;
+    private static final int PREFETCH_ROWS = FETCH_SIZE;
+    private static final Map<String, Object> END_OF_FILE = Collections.unmodifiableMap(new HashMap<>());
+    private static final Map<Class<?>, String> TABLE_ALIASES = Map.of(
+            Product.class, "p",
+            RegionData.class, "r",
+            CompetitorData.class, "c"
+    );
+    private static final Map<String, String> DIRECTORY_COLUMNS = Map.of(
+            "competitordata.competitorName", "retail_name",
+            "regiondata.region", "region_name",
+            "regiondata.regionAddress", "physical_address"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final Map<String, ExportColumn> availableColumns = new LinkedHashMap<>();
+    private final Map<QueryKey, ExportQuery> queryCache = new ConcurrentHashMap<>();
+    private final AsyncTaskExecutor exportReadExecutor;
+
+    public ExportRowReader(JdbcTemplate jdbcTemplate,
+                           PlatformTransactionManager transactionManager,
+                           EntityRegistryService entityRegistryService,
+                           @Qualifier("exportReadExecutor") AsyncTaskExecutor exportReadExecutor) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.exportReadExecutor = exportReadExecutor;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+
+        for (Class<?> entityClass : entityRegistryService.getEntityClasses()) {
+            String alias = TABLE_ALIASES.get(entityClass);
+            if (alias == null) {
+                log.warn("Сущность {} не участвует в запросе экспорта", entityClass.getSimpleName());
+                continue;
+            }
+            collectColumns(entityClass, alias);
+        }
+    }
+
+    /**
+     * Читает все строки файла и передает их обработчику по одной
+     *
+     * @param fileId      ID файла
+     * @param fields      ключи полей в порядке позиций экспорта (поля вне маппинга игнорируются)
+     * @param rowConsumer обработчик строк
+     * @return количество прочитанных строк
+     */
+    public long readRows(Long fileId, Collection<String> fields, Consumer<Map<String, Object>> rowConsumer) {
+        return readRows(fileId, fields, null, rowConsumer);
+    }
+
+    /**
+     * Читает строки файла, отобранные фильтром в запросе, и передает их обработчику по одной
+     *
+     * @param fileId      ID файла
+     * @param fields      ключи полей в порядке позиций экспорта (поля вне маппинга игнорируются)
+     * @param filter      фильтр строк в запросе (null - все строки файла)
+     * @param rowConsumer обработчик строк
+     * @return количество прочитанных строк
+     */
+    public long readRows(Long fileId, Collection<String> fields, ExportQueryFilter filter,
+                         Consumer<Map<String, Object>> rowConsumer) {
+        ExportQuery query = queryCache.computeIfAbsent(
+                new QueryKey(List.copyOf(fields), filter != null, filter != null && filter.enrichFromDirectory()),
+                this::buildQuery);
+        ColumnReader[] readers = query.readers();
+        ExportRow.Layout layout = query.layout();
+        long[] rowCount = {0};
+
+        RowCallbackHandler handler = rs -> {
+            Object[] values = new Object[readers.length];
+            for (int i = 0; i < readers.length; i++) {
+                values[i] = readers[i].read(rs, i + 1);
+            }
+            rowConsumer.accept(new ExportRow(layout, values));
+            rowCount[0]++;
+        };
+
+        // Postgres использует курсор только внутри транзакции (autocommit выключен)
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+            PreparedStatement statement = con.prepareStatement(query.sql(),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(FETCH_SIZE);
+            statement.setLong(1, fileId);
+            if (filter != null) {
+                statement.setString(2, DataSourceType.TASK.name());
+                statement.setString(3, filter.taskNumber());
+            }
+            return statement;
+        }, handler));
+
+        log.debug("Прочитано {} строк экспорта из файла {}", rowCount[0], fileId);
+        return rowCount[0];
+    }
+
+    /**
+     * Читает строки нескольких файлов и передает их обработчику в порядке файлов.
+     * Текущий файл читается в вызывающем потоке, а следующий - заранее в общем пуле
+     * exportReadExecutor в ограниченную очередь, поэтому выгрузка держит не больше двух курсоров
+     * и PREFETCH_ROWS строк упреждения. Если упреждение не успело начаться (пул занят),
+     * файл читается в вызывающем потоке. Обработчик и слушатель вызываются только в вызывающем потоке
+     *
+     * @param fileIds      ID файлов в порядке выгрузки
+     * @param fields       ключи полей в порядке позиций экспорта
+     * @param filter       фильтр строк в запросе (null - все строки файлов)
+     * @param rowConsumer  обработчик строк
+     * @param fileListener получает количество строк каждого файла после передачи всех его строк
+     * @return общее количество прочитанных строк
+     */
+    public long readFiles(List<Long> fileIds, Collection<String> fields, ExportQueryFilter filter,
+                          Consumer<Map<String, Object>> rowConsumer, FileReadListener fileListener) {
+        long totalRows = 0;
+        PrefetchedFile current = null;
+        PrefetchedFile next = null;
+        try {
+            for (int i = 0; i < fileIds.size(); i++) {
+                current = next;
+                next = i + 1 < fileIds.size() ? startPrefetch(fileIds.get(i + 1), fields, filter) : null;
+
+                long rowCount = current != null && !current.claim()
+                        ? drain(current, rowConsumer)
+                        : readRows(fileIds.get(i), fields, filter, rowConsumer);
+                fileListener.fileRead(i, fileIds.get(i), rowCount);
+                totalRows += rowCount;
+            }
+            return totalRows;
+        } finally {
+            // Прерывает упреждающее чтение, если обработка строк завершилась ошибкой
+            if (current != null) {
+                current.cancel();
+            }
+            if (next != null) {
+                next.cancel();
+            }
+        }
+    }
+
+    private PrefetchedFile startPrefetch(Long fileId, Collection<String> fields, ExportQueryFilter filter) {
+        PrefetchedFile file = new PrefetchedFile();
+        try {
+            file.task = exportReadExecutor.submit(() -> {
+                if (file.claim()) {
+                    prefetch(fileId, fields, filter, file);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            log.debug("Пул чтения экспорта занят, файл {} будет прочитан без упреждения", fileId);
+        }
+        return file;
+    }
+
+    private void prefetch(Long fileId, Collection<String> fields, ExportQueryFilter filter, PrefetchedFile file) {
+        try {
+            readRows(fileId, fields, filter, row -> put(file.rows, row));
+        } catch (RuntimeException | Error e) {
+            file.failure = e;
+        }
+        try {
+            file.rows.put(END_OF_FILE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void put(BlockingQueue<Map<String, Object>> queue, Map<String, Object> row) {
+        try {
+            queue.put(row);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Чтение данных экспорта прервано", e);
+        }
+    }
+
+    private static long drain(PrefetchedFile file, Consumer<Map<String, Object>> rowConsumer) {
+        long rowCount = 0;
+        try {
+            for (Map<String, Object> row = file.rows.take(); row != END_OF_FILE; row = file.rows.take()) {
+                rowConsumer.accept(row);
+                rowCount++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Чтение данных экспорта прервано", e);
+        }
+
+        Throwable failure = file.failure;
+        if (failure instanceof RuntimeException e) {
+            throw e;
+        }
+        if (failure instanceof Error e) {
+            throw e;
+        }
+        return rowCount;
+    }
+
+    private void collectColumns(Class<?> entityClass, String alias) {
+        String prefix = entityClass.getSimpleName().toLowerCase();
+        for (Field field : entityClass.getDeclaredFields()) {
+            FieldDescription description = field.getAnnotation(FieldDescription.class);
+            if (description != null && !description.skipMapping()) {
+                String key = prefix + "." + field.getName();
+                availableColumns.put(key, new ExportColumn(key, alias, alias + "." + columnName(field),
+                        readerFor(field.getType())));
+            }
+        }
+    }
+
+    /**
+     * Способ чтения значения выбирается один раз по типу поля сущности
+     */
+    private static ColumnReader readerFor(Class<?> type) {
+        if (type == LocalDateTime.class) {
+            return (rs, index) -> rs.getObject(index, LocalDateTime.class);
+        }
+        if (type == Long.class) {
+            return (rs, index) -> {
+                long value = rs.getLong(index);
+                return rs.wasNull() ? null : value;
+            };
+        }
+        if (type == Double.class) {
+            return (rs, index) -> {
+                double value = rs.getDouble(index);
+                return rs.wasNull() ? null : value;
+            };
+        }
+        return ResultSet::getString;
+    }
+
+    /**
+     * Имя колонки по правилам именования Spring: явное имя из @Column или snake_case имени поля
+     */
+    private static String columnName(Field field) {
+        Column column = field.getAnnotation(Column.class);
+        if (column != null && !column.name().isEmpty()) {
+            return column.name();
+        }
+
+        String name = field.getName();
+        StringBuilder result = new StringBuilder(name.length() + 8);
+        for (int i = 0; i < name.length(); i++) {
+            char current = name.charAt(i);
+            if (i > 0 && i < name.length() - 1
+                    && Character.isLowerCase(name.charAt(i - 1))
+                    && Character.isUpperCase(current)
+                    && Character.isLowerCase(name.charAt(i + 1))) {
+                result.append('_');
+            }
+            result.append(Character.toLowerCase(current));
+        }
+        return result.toString();
+    }
+
+    private ExportQuery buildQuery(QueryKey key) {
+        List<ExportColumn> columns = key.fields().stream()
+                .distinct()
+                .map(availableColumns::get)
+                .filter(Objects::nonNull)
+                .map(column -> key.enrichFromDirectory() ? withDirectoryValue(column) : column)
+                .toList();
+        String sql = buildSql(columns, key.taskFilter(), key.enrichFromDirectory());
+        log.debug("Запрос экспорта: выбрано {} из {} колонок. SQL: {}", columns.size(), availableColumns.size(), sql);
+
+        return new ExportQuery(
+                new ExportRow.Layout(columns.stream().map(ExportColumn::key).toList()),
+                columns.stream().map(ExportColumn::reader).toArray(ColumnReader[]::new),
+                sql);
+    }
+
+    /**
+     * LEFT JOIN разворачивает товар в строки: регион x конкурент, только регионы,
+     * только конкуренты или один товар без связанных данных.
+     * Таблица без запрошенных полей не присоединяется, и строки по ней не размножаются.
+     * Фильтр по заданию - некоррелированный IN по кодам сетей товаров задания, который
+     * Postgres выполняет хеш-полусоединением; код строки сравнивается так же, как ключ задания.
+     * Запрос не сортируется: строки отдаются в порядке выполнения соединений, без полной
+     * сортировки результата перед выдачей первой строки курсора
+     */
+    private static String buildSql(List<ExportColumn> columns, boolean taskFilter, boolean joinDirectory) {
+        Set<String> aliases = columns.stream().map(ExportColumn::alias).collect(Collectors.toSet());
+        boolean joinRegions = aliases.contains(TABLE_ALIASES.get(RegionData.class));
+        boolean joinCompetitors = taskFilter || aliases.contains(TABLE_ALIASES.get(CompetitorData.class));
+
+        StringBuilder sql = new StringBuilder("SELECT ");
+        sql.append(columns.isEmpty() ? "p.id" :
+                columns.stream().map(ExportColumn::expression).collect(Collectors.joining(", ")));
+        sql.append(" FROM products p");
+        if (joinRegions) {
+            sql.append(" LEFT JOIN region_data r ON r.product_id = p.id");
+        }
+        if (joinCompetitors) {
+            sql.append(" LEFT JOIN site_data c ON c.product_id = p.id");
+        }
+        if (joinDirectory) {
+            sql.append(" LEFT JOIN retail_network_directory d ON d.retail_code = c.competitor_additional");
+        }
+        sql.append(" WHERE p.file_id = ?");
+        if (taskFilter) {
+            sql.append(" AND UPPER(COALESCE(TRIM(c.competitor_additional), '')) IN (")
+                    .append("SELECT UPPER(tc.competitor_additional) FROM products tp")
+                    .append(" JOIN site_data tc ON tc.product_id = tp.id")
+                    .append(" WHERE tp.data_source = ? AND tp.product_additional1 = ?)");
+        }
+        return sql.toString();
+    }
+
+    /**
+     * Название сети и регион берутся из справочника, если код сети строки в нем найден
+     */
+    private static ExportColumn withDirectoryValue(ExportColumn column) {
+        String directoryColumn = DIRECTORY_COLUMNS.get(column.key());
+        if (directoryColumn == null) {
+            return column;
+        }
+        String expression = "CASE WHEN d.id IS NOT NULL THEN d." + directoryColumn + " ELSE " + column.expression() + " END";
+        return new ExportColumn(column.key(), column.alias(), expression, column.reader());
+    }
+
+    /**
+     * Уведомление о полностью переданном файле
+     */
+    @FunctionalInterface
+    public interface FileReadListener {
+        /**
+         * @param index    порядковый номер файла
+         * @param fileId   ID файла
+         * @param rowCount количество строк файла
+         */
+        void fileRead(int index, Long fileId, long rowCount);
+    }
+
+    /**
+     * Файл, читаемый с упреждением. Файл читает тот, кто первым его захватит:
+     * задача пула или вызывающий поток, если задача еще не началась
+     */
+    private static class PrefetchedFile {
+        private final BlockingQueue<Map<String, Object>> rows = new ArrayBlockingQueue<>(PREFETCH_ROWS);
+        private final AtomicBoolean claimed = new AtomicBoolean();
+        private volatile Future<?> task;
+        private volatile Throwable failure;
+
+        private boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+
+        private void cancel() {
+            claim();
+            Future<?> prefetchTask = task;
+            if (prefetchTask != null) {
+                prefetchTask.cancel(true);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ColumnReader {
+        Object read(ResultSet rs, int index) throws SQLException;
+    }
+
+    private record ExportColumn(String key, String alias, String expression, ColumnReader reader) {
+    }
+
+    private record QueryKey(List<String> fields, boolean taskFilter, boolean enrichFromDirectory) {
+    }
+
+    private record ExportQuery(ExportRow.Layout layout, ColumnReader[] readers, String sql) {
+    }
+}
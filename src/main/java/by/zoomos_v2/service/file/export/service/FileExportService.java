@@ -1,22 +1,22 @@
 package by.zoomos_v2.service.file.export.service;
 
-import by.zoomos_v2.annotations.FieldDescription;
 import by.zoomos_v2.model.ExportConfig;
-import by.zoomos_v2.model.ExportResult;
+import by.zoomos_v2.model.ExportField;
 import by.zoomos_v2.model.FileMetadata;
-import by.zoomos_v2.model.entity.CompetitorData;
-import by.zoomos_v2.model.entity.Product;
-import by.zoomos_v2.model.entity.RegionData;
 import by.zoomos_v2.model.enums.OperationStatus;
 import by.zoomos_v2.model.enums.OperationType;
 import by.zoomos_v2.model.operation.BaseOperation;
 import by.zoomos_v2.model.operation.ExportOperation;
 import by.zoomos_v2.repository.FileMetadataRepository;
-import by.zoomos_v2.repository.ProductRepository;
 import by.zoomos_v2.service.file.BatchProcessingData;
+import by.zoomos_v2.service.file.export.exporter.CSVDataExporter;
 import by.zoomos_v2.service.file.export.exporter.DataExporter;
 import by.zoomos_v2.service.file.export.exporter.DataExporterFactory;
-import by.zoomos_v2.service.file.export.strategy.DataProcessingStrategy;
+import by.zoomos_v2.service.file.export.exporter.ExportCompression;
+import by.zoomos_v2.service.file.export.exporter.ExportSplitPolicy;
+import by.zoomos_v2.service.file.export.exporter.ExportRowWriter;
+import by.zoomos_v2.service.file.export.exporter.SplitExportRowWriter;
+import by.zoomos_v2.service.file.export.strategy.StrategyChain;
 import by.zoomos_v2.service.file.export.strategy.StrategyManager;
 import by.zoomos_v2.service.statistics.OperationStatsService;
 import by.zoomos_v2.service.statistics.StatisticsProcessor;
@@ -25,16 +25,20 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.io.ByteArrayOutputStream;
 import java.io.FileNotFoundException;
-import java.lang.reflect.Field;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.rmi.server.ExportException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -44,181 +48,196 @@ import java.util.stream.Collectors;
 @Service
 @RequiredArgsConstructor
 public class FileExportService {
-    private static final int BATCH_SIZE = 1000;
-
     private final FileMetadataRepository fileMetadataRepository;
-    private final ProductRepository productRepository;
     private final DataExporterFactory exporterFactory;
     private final OperationStatsService operationStatsService;
     private final StatisticsProcessor statisticsProcessor;
     private final StrategyManager strategyManager;
+    private final ExportRowReader exportRowReader;
 
     /**
-     * Экспортирует данные из файла с оптимизированной обработкой
+     * Проверяет параметры потокового экспорта до начала передачи данных клиенту
      *
-     * @param fileId       ID файла
+     * @param fileIds      Список ID файлов для экспорта
      * @param exportConfig конфигурация экспорта
      * @param fileType     тип экспорта (CSV, XLSX)
-     * @return результат экспорта
+     * @return имя выходного файла
      */
-    @Transactional()
-    public ExportResult exportFileData(Long fileId, ExportConfig exportConfig, String fileType) {
-        log.info("Начало экспорта. FileId: {}, стратегия: {}", fileId, exportConfig.getStrategyType());
-        ExportOperation operation = null;
-
-        try {
-            FileMetadata metadata = getFileMetadata(fileId);
-            operation = initializeExportOperation(metadata, fileType, exportConfig);
-
-            // Получаем стратегию и проверяем параметры
-            DataProcessingStrategy strategy = strategyManager.getStrategy(exportConfig.getStrategyType());
-            strategyManager.validateStrategyParameters(exportConfig.getStrategyType(), exportConfig.getParams());
-
-            // Обрабатываем данные
-            List<Map<String, Object>> processedData = processDataWithStrategy(metadata, strategy, exportConfig, operation);
-
-            // Экспортируем обработанные данные
-            ExportResult result = createExportResult(processedData, metadata, getExporter(fileType),
-                    exportConfig, fileType);
-
-            // Обновляем статистику
-            if (operation != null) {
-                operation.setFilesGenerated(1);
-                operation.setTargetPath(result.getFileName());
-                statisticsProcessor.updateOperationStats(operation);
-            }
+    @Transactional(readOnly = true)
+    public String prepareStreamingExport(List<Long> fileIds, ExportConfig exportConfig, String fileType)
+            throws IOException {
+        if (fileIds == null || fileIds.isEmpty()) {
+            throw new IllegalArgumentException("Список файлов для экспорта пуст");
+        }
+        for (Long fileId : fileIds) {
+            getFileMetadata(fileId);
+        }
+        strategyManager.validateChainParameters(exportConfig);
+        getExporter(fileType);
+        if ("CSV".equalsIgnoreCase(fileType)) {
+            CSVDataExporter.resolveCharset(exportConfig.getParams());
+        }
+        ExportSplitPolicy splitPolicy = ExportSplitPolicy.resolve(exportConfig.getParams());
+        ExportCompression compression = resolveCompression(exportConfig, splitPolicy);
 
-            return result;
+        // Поля конфигурации загружаются заранее: запись ответа идет в другом потоке
+        exportConfig.getFields().size();
 
-        } catch (Exception e) {
-            handleExportError(operation, e);
-            return ExportResult.error(e.getMessage());
-        }
+        String fileName = generateMultiFileExportName(fileIds, fileType);
+        return splitPolicy.splitsFiles() ? ExportCompression.ZIP.fileName(fileName) : compression.fileName(fileName);
     }
 
     /**
-     * Экспортирует данные из нескольких файлов с оптимизированной обработкой
+     * Потоковый экспорт из нескольких файлов: строки читаются курсором из БД,
+     * проходят цепочку стадий стратегий и сразу записываются в выходной поток.
+     * Объем используемой памяти не зависит от размера выгрузки
      *
      * @param fileIds      Список ID файлов для экспорта
      * @param exportConfig конфигурация экспорта
      * @param fileType     тип экспорта (CSV, XLSX)
-     * @return результат экспорта
+     * @param fileName     имя выходного файла
+     * @param outputStream поток для записи результата
      */
-    @Transactional()
-    public ExportResult exportFilesData(List<Long> fileIds, ExportConfig exportConfig, String fileType) {
-        log.info("Начало экспорта из нескольких файлов. FileIds: {}, стратегия: {}", fileIds, exportConfig.getStrategyType());
+    public void streamFilesData(List<Long> fileIds, ExportConfig exportConfig, String fileType,
+                                String fileName, OutputStream outputStream) throws IOException {
         ExportOperation operation = null;
-
         try {
-            // Проверка на пустой список файлов
-            if (fileIds == null || fileIds.isEmpty()) {
-                throw new IllegalArgumentException("Список файлов для экспорта пуст");
-            }
-
-            // Получаем метаданные первого файла для инициализации операции
-            FileMetadata firstMetadata = getFileMetadata(fileIds.get(0));
-
-            // Создаем единую операцию экспорта для всех файлов
-            operation = initializeMultiFileOperation(fileIds, firstMetadata, fileType, exportConfig);
-
-            // Получаем стратегию и проверяем параметры
-            DataProcessingStrategy strategy = strategyManager.getStrategy(exportConfig.getStrategyType());
-            strategyManager.validateStrategyParameters(exportConfig.getStrategyType(), exportConfig.getParams());
-
-            // Обрабатываем данные в оптимизированном режиме - объединяем все данные из файлов
-            List<Map<String, Object>> allData = new ArrayList<>();
-            int totalRecords = 0;
-            int processedFiles = 0;
-
-            // Добавляем информацию о общем количестве файлов в метаданные
-            Map<String, Object> progressInfo = new HashMap<>();
-            progressInfo.put("totalFiles", fileIds.size());
-            operation.getMetadata().put("progressInfo", progressInfo);
-            statisticsProcessor.updateOperationStats(operation);
-
-            for (Long fileId : fileIds) {
-                FileMetadata metadata = getFileMetadata(fileId);
-                processedFiles++;
-
-                // Обновляем метрики прогресса
-                int progressPercentage = (int) ((processedFiles * 100.0) / fileIds.size());
-                String progressMessage = String.format("Обработка файла %d из %d - %s",
-                        processedFiles, fileIds.size(), metadata.getOriginalFilename());
-
-                // Обновляем прогресс и метаданные
-                operation.setCurrentProgress(progressPercentage);
-                progressInfo.put("currentFile", metadata.getOriginalFilename());
-                progressInfo.put("processedFiles", processedFiles);
-                progressInfo.put("message", progressMessage);
-
-                // Обновляем прогресс операции
-                statisticsProcessor.handleProgress(operation, progressPercentage, progressMessage);
-
-                // Получаем данные из текущего файла
-                List<Map<String, Object>> fileData = getDataFromFile(metadata);
-                allData.addAll(fileData);
-                totalRecords += fileData.size();
-
-                // Обновляем статистику операции
-                operation.setTotalRecords(totalRecords);
-                operation.setProcessedRecords(processedFiles); // Обновляем количество обработанных файлов
-                statisticsProcessor.updateOperationStats(operation);
-            }
+            operation = createExportOperation(fileIds, exportConfig, fileType);
+            writeExport(operation, fileIds, exportConfig, fileType, fileName, outputStream);
+            completeExport(operation, fileName, null);
+        } catch (IOException e) {
+            handleExportError(operation, e);
+            throw e;
+        } catch (Exception e) {
+            handleExportError(operation, e);
+            throw new IOException("Ошибка потокового экспорта: " + e.getMessage(), e);
+        }
+    }
 
-            // Обрабатываем все собранные данные с помощью стратегии
-            progressInfo.put("processingStatus", "Применение стратегии обработки данных");
-            statisticsProcessor.updateOperationStats(operation);
+    /**
+     * Создает операцию экспорта из нескольких файлов в статусе ожидания
+     */
+    public ExportOperation createExportOperation(List<Long> fileIds, ExportConfig exportConfig, String fileType)
+            throws FileNotFoundException {
+        FileMetadata firstMetadata = getFileMetadata(fileIds.get(0));
+        return initializeMultiFileOperation(fileIds, firstMetadata, fileType, exportConfig);
+    }
 
-            BatchProcessingData batchData = BatchProcessingData.createNew();
-            List<Map<String, Object>> processedData = strategy.processData(allData, exportConfig, batchData);
+    /**
+     * Записывает данные файлов в выходной поток и обновляет счетчики операции.
+     * Файлы читаются параллельно, строки проходят стадии стратегий и запись в порядке файлов.
+     * При заданном параметре compression поток сжимается на лету, при ограничении размера части
+     * выгрузка делится на файлы в zip-архиве. Точки разбиения сохраняются в метаданных операции.
+     * Статус операции не меняется, завершение выполняет вызывающий код
+     */
+    public void writeExport(ExportOperation operation, List<Long> fileIds, ExportConfig exportConfig,
+                            String fileType, String fileName, OutputStream outputStream) throws IOException {
+        StrategyChain chain = strategyManager.getChain(exportConfig);
+        log.info("Начало потокового экспорта. FileIds: {}, стратегии: {}", fileIds, chain.getTypes());
+        operation.getMetadata().put("streaming", true);
+        operation.getMetadata().put("strategyChain", chain.getTypes());
+        operationStatsService.updateOperationStatus(operation, OperationStatus.IN_PROGRESS, null, null);
+
+        DataExporter exporter = getExporter(fileType);
+        BatchProcessingData batchData = BatchProcessingData.createNew();
+        Set<String> requiredFields = getRequiredFields(exportConfig, chain);
+        ExportSplitPolicy splitPolicy = ExportSplitPolicy.resolve(exportConfig.getParams());
+        ExportCompression compression = resolveCompression(exportConfig, splitPolicy);
+        OutputStream target = compression.wrap(outputStream, fileName,
+                ExportCompression.isParallel(exportConfig.getParams()));
+        long totalRecords = 0;
+        boolean finished = false;
 
-            // Устанавливаем количество обработанных записей
-            if (batchData != null && batchData.getSuccessCount() > 0) {
-                operation.setProcessedRecords((int) batchData.getSuccessCount());
-            } else {
-                operation.setProcessedRecords(processedData.size());
+        try {
+            try (ExportRowWriter rowWriter = splitPolicy.splitsFiles()
+                    ? new SplitExportRowWriter(exporter, exportConfig, target,
+                    ExportCompression.ZIP.entryName(fileName), splitPolicy)
+                    : exporter.openRowWriter(target, exportConfig)) {
+                ExportQueryFilter queryFilter = chain.getQueryFilter(exportConfig);
+                StrategyChain.OpenChain stages = chain.open(exportConfig, batchData,
+                        row -> writeRow(rowWriter, row), queryFilter != null);
+                Map<Long, String> fileNames = getFileNames(fileIds);
+                Map<String, Object> filesProgress = new LinkedHashMap<>();
+                totalRecords = exportRowReader.readFiles(fileIds, requiredFields, queryFilter, stages,
+                        (index, fileId, fileRecords) -> updateOperationProgress(operation, index + 1, fileIds.size(),
+                                fileNames.get(fileId), fileRecords, filesProgress));
+                stages.finish();
+                rowWriter.finish();
+
+                operation.setTotalRecords((int) totalRecords);
+                operation.setProcessedRecords((int) rowWriter.getRowCount());
+
+                List<Map<String, Object>> splitPoints = rowWriter.getSplitPoints();
+                if (!splitPoints.isEmpty()) {
+                    operation.getMetadata().put("splitPoints", splitPoints);
+                }
+                operation.setFilesGenerated(splitPolicy.splitsFiles() ? splitPoints.size() : 1);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
+            compression.finish(target);
+            finished = true;
+        } finally {
+            // Прерванная выгрузка освобождает потоки и Deflater компрессора без завершения архива
+            if (!finished) {
+                compression.abort(target);
+            }
+        }
 
-            // Устанавливаем общее количество записей
-            operation.setTotalRecords(Math.max(totalRecords, processedData.size()));
-
-            // Экспортируем обработанные данные
-            progressInfo.put("processingStatus", "Формирование файла экспорта");
-            statisticsProcessor.updateOperationStats(operation);
-
-            ExportResult result = createExportResult(processedData, firstMetadata, getExporter(fileType),
-                    exportConfig, fileType);
-
-            // Формируем имя выходного файла с учетом нескольких источников
-            result.setFileName(generateMultiFileExportName(fileIds, fileType));
-
-            // Обновляем статистику завершенной операции
-            if (operation != null) {
-                operation.setFilesGenerated(1);
-                operation.setTargetPath(result.getFileName());
-
-                // Устанавливаем final_status в метаданные для анализа
-                operation.getMetadata().put("final_status", "success");
-                operation.getMetadata().put("processed_records", operation.getProcessedRecords());
-                operation.getMetadata().put("total_records", operation.getTotalRecords());
+        log.info("Потоковый экспорт завершен. Прочитано строк: {}, записано: {}",
+                totalRecords, operation.getProcessedRecords());
+    }
 
-                // Помечаем операцию как успешно завершенную
-                operationStatsService.updateOperationStatus(
-                        operation,
-                        OperationStatus.COMPLETED,
-                        null,
-                        null
-                );
-            }
+    /**
+     * Помечает операцию экспорта как успешно завершенную
+     *
+     * @param operation  операция экспорта
+     * @param targetPath путь или имя сформированного файла
+     * @param fileSize   размер файла в байтах (null, если файл не сохранялся)
+     */
+    public void completeExport(ExportOperation operation, String targetPath, Long fileSize) {
+        if (operation.getFilesGenerated() == null || operation.getFilesGenerated() == 0) {
+            operation.setFilesGenerated(1);
+        }
+        operation.setTargetPath(targetPath);
+        operation.setFileSize(fileSize);
+        operation.setCurrentProgress(100);
+        operation.getMetadata().put("final_status", "success");
+        operation.getMetadata().put("processed_records", operation.getProcessedRecords());
+        operation.getMetadata().put("total_records", operation.getTotalRecords());
+        operationStatsService.updateOperationStatus(operation, OperationStatus.COMPLETED, null, null);
+    }
 
-            // Добавляем статистику обработки в результат
-            result.setBatchProcessingData(batchData);
+    /**
+     * Помечает операцию экспорта как завершенную с ошибкой
+     */
+    public void failExport(ExportOperation operation, Exception e) {
+        handleExportError(operation, e);
+    }
 
-            return result;
+    /**
+     * Части выгрузки всегда отдаются zip-архивом, поэтому при разбиении на файлы
+     * допускается только сжатие zip, а сам архив формирует запись по частям
+     */
+    private ExportCompression resolveCompression(ExportConfig exportConfig, ExportSplitPolicy splitPolicy) {
+        ExportCompression compression = ExportCompression.resolve(exportConfig.getParams());
+        if (!splitPolicy.splitsFiles()) {
+            return compression;
+        }
+        if (compression == ExportCompression.GZIP) {
+            throw new IllegalArgumentException("При разбиении на файлы выгрузка упаковывается в zip, сжатие gzip недоступно");
+        }
+        return ExportCompression.NONE;
+    }
 
-        } catch (Exception e) {
-            handleExportError(operation, e);
-            return ExportResult.error(e.getMessage());
+    /**
+     * Записывает строку, прошедшую стадии стратегий
+     */
+    private void writeRow(ExportRowWriter rowWriter, Map<String, Object> row) {
+        try {
+            rowWriter.writeRow(row);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
     }
 
@@ -259,16 +278,21 @@ public class FileExportService {
     }
 
     /**
-     * Обновляет прогресс операции при многофайловом экспорте
+     * Обновляет прогресс операции после передачи очередного файла многофайлового экспорта.
+     * Количество строк каждого прочитанного файла сохраняется в progressInfo.files
      */
-    private void updateOperationProgress(ExportOperation operation, int currentFileIndex, int totalFiles) {
-        int progressPercentage = (int) ((currentFileIndex * 100.0) / totalFiles);
-        String message = String.format("Обработка файла %d из %d", currentFileIndex + 1, totalFiles);
+    private void updateOperationProgress(ExportOperation operation, int processedFiles, int totalFiles,
+                                         String fileName, long fileRecords, Map<String, Object> filesProgress) {
+        int progressPercentage = (int) ((processedFiles * 100.0) / totalFiles);
+        String message = String.format("Прочитан файл %d из %d - %s", processedFiles, totalFiles, fileName);
+        filesProgress.put(fileName, fileRecords);
 
         // Добавляем информацию о прогрессе в метаданные
         Map<String, Object> progressInfo = new HashMap<>();
-        progressInfo.put("currentFile", currentFileIndex + 1);
+        progressInfo.put("currentFile", fileName);
+        progressInfo.put("processedFiles", processedFiles);
         progressInfo.put("totalFiles", totalFiles);
+        progressInfo.put("files", filesProgress);
         progressInfo.put("message", message);
         progressInfo.put("progress", progressPercentage);
 
@@ -279,6 +303,20 @@ public class FileExportService {
         statisticsProcessor.handleProgress(operation, progressPercentage, message);
     }
 
+    /**
+     * Исходные имена файлов для отчета о прогрессе
+     */
+    private Map<Long, String> getFileNames(List<Long> fileIds) {
+        Map<Long, String> fileNames = new HashMap<>();
+        for (FileMetadata metadata : fileMetadataRepository.findAllById(fileIds)) {
+            fileNames.put(metadata.getId(), metadata.getOriginalFilename());
+        }
+        for (Long fileId : fileIds) {
+            fileNames.putIfAbsent(fileId, String.valueOf(fileId));
+        }
+        return fileNames;
+    }
+
     /**
      * Генерирует имя файла для экспорта из нескольких источников
      */
@@ -325,24 +363,6 @@ public class FileExportService {
         return operationStatsService.createOperation(operation);
     }
 
-
-    private ExportOperation initializeExportOperation(FileMetadata metadata,
-                                                      String fileType,
-                                                      ExportConfig exportConfig) {
-        ExportOperation operation = new ExportOperation();
-        operation.setClientId(metadata.getClientId());
-        operation.setType(OperationType.EXPORT);
-        operation.setExportFormat(fileType);
-        operation.setSourceIdentifier(metadata.getStoredFilename());
-        operation.setProcessingStrategy(exportConfig.getStrategyType().name());
-        operation.setExportConfig(convertExportConfigToMap(exportConfig));
-
-        // Инициализируем все необходимые поля
-        initializeBaseOperationFields(operation);
-
-        return operationStatsService.createOperation(operation);
-    }
-
     private void handleExportError(ExportOperation operation, Exception e) {
         log.error("Ошибка экспорта данных: {}", e.getMessage(), e);
 
@@ -360,6 +380,8 @@ public class FileExportService {
         // Конвертация конфигурации экспорта в Map для сохранения в БД
         Map<String, Object> configMap = new HashMap<>();
         // Добавляем нужные параметры из конфигурации
+        configMap.put("configId", config.getId());
+        configMap.put("params", new HashMap<>(config.getParams()));
         return configMap;
     }
 
@@ -381,200 +403,17 @@ public class FileExportService {
     }
 
     /**
-     * Обрабатывает данные с использованием выбранной стратегии
-     */
-    private List<Map<String, Object>> processDataWithStrategy(FileMetadata metadata,
-                                                              DataProcessingStrategy strategy,
-                                                              ExportConfig exportConfig,
-                                                              ExportOperation operation) throws ExportException {
-        try {
-            // Валидируем параметры стратегии перед обработкой
-
-            BatchProcessingData stats = BatchProcessingData.createNew();
-            List<Map<String, Object>> data = getDataFromFile(metadata);
-
-            // Добавляем метаданные в статистику
-            Map<String, Object> strategyMetadata = new HashMap<>();
-            strategyMetadata.put("strategyType", strategy.getStrategyType());
-            strategyMetadata.put("parameters", exportConfig.getParams());
-            operation.getMetadata().put("strategy", strategyMetadata);
-
-            // Обрабатываем данные
-            List<Map<String, Object>> processedData = strategy.processData(data, exportConfig, stats);
-
-            // Обновляем статистику операции
-            operation.setProcessedRecords(processedData.size());
-            statisticsProcessor.updateOperationStats(operation);
-
-            return processedData;
-
-        } catch (IllegalArgumentException e) {
-            // Ошибки валидации параметров
-            log.error("Ошибка валидации параметров стратегии: {}", e.getMessage());
-            throw new ExportException("Некорректные параметры стратегии: " + e.getMessage());
-        } catch (Exception e) {
-            log.error("Ошибка при обработке данных стратегией: {}", e.getMessage(), e);
-            throw new ExportException("Ошибка обработки данных: " + e.getMessage());
-        }
-    }
-
-    private ExportResult createExportResult(List<Map<String, Object>> data,
-                                            FileMetadata metadata,
-                                            DataExporter exporter,
-                                            ExportConfig exportConfig,
-                                            String fileType) throws ExportException {
-        try (ByteArrayOutputStream outputStream = new ByteArrayOutputStream()) {
-            BatchProcessingData stats = BatchProcessingData.createNew();
-            ExportResult result = exporter.export(data, outputStream, exportConfig, stats);
-            result.setFileName(generateFileName(metadata, fileType));
-            result.setFileContent(outputStream.toByteArray());
-            return result;
-        } catch (Exception e) {
-            log.error("Ошибка создания результата экспорта: {}", e.getMessage(), e);
-            throw new ExportException("Export result creation failed", e);
-        }
-    }
-
-    /**
-     * Оптимизированное получение данных из файла с батчевой обработкой
-     */
-    private List<Map<String, Object>> getDataFromFile(FileMetadata metadata) throws ExportException {
-        log.debug("Получение данных из файла: {}", metadata.getId());
-        List<Map<String, Object>> result = new ArrayList<>();
-
-        try {
-            List<Product> products = productRepository.findByFileId(metadata.getId());
-            processBatchedProducts(products, result);
-            log.info("Получено {} записей из файла {}", result.size(), metadata.getId());
-            return result;
-        } catch (Exception e) {
-            log.error("Ошибка получения данных из файла: {}", e.getMessage(), e);
-            throw new ExportException("Failed to extract data", e);
-        }
-    }
-
-    private void processBatchedProducts(List<Product> products, List<Map<String, Object>> result) {
-        int size = products.size();
-        for (int i = 0; i < size; i += BATCH_SIZE) {
-            int end = Math.min(size, i + BATCH_SIZE);
-            List<Product> batch = products.subList(i, end);
-            List<Long> batchIds = batch.stream().map(Product::getId).toList();
-
-            Map<Long, Product> regionsMap = createRegionsMap(batchIds);
-            Map<Long, Product> competitorsMap = createCompetitorsMap(batchIds);
-
-            processBatch(batch, regionsMap, competitorsMap, result);
-
-            if (i % (BATCH_SIZE * 5) == 0) {
-                log.debug("Обработано {} записей из {}", i, size);
-            }
-        }
-    }
-
-
-    private Map<Long, Product> createRegionsMap(List<Long> productIds) {
-        return productRepository.findByIdInWithRegionData(productIds).stream()
-                .collect(Collectors.toMap(Product::getId, p -> p));
-    }
-
-    private Map<Long, Product> createCompetitorsMap(List<Long> productIds) {
-        return productRepository.findByIdInWithCompetitorData(productIds).stream()
-                .collect(Collectors.toMap(Product::getId, p -> p));
-    }
-
-    private void processBatch(List<Product> products,
-                              Map<Long, Product> regionsMap,
-                              Map<Long, Product> competitorsMap,
-                              List<Map<String, Object>> result) {
-        for (Product product : products) {
-            try {
-                Map<String, Object> productData = extractFieldsWithDescriptions(product, "product");
-                processProductRelations(product, productData, regionsMap, competitorsMap, result);
-            } catch (Exception e) {
-                log.warn("Ошибка обработки продукта {}: {}", product.getId(), e.getMessage());
-            }
-        }
-    }
-
-    private void processProductRelations(Product product,
-                                         Map<String, Object> productData,
-                                         Map<Long, Product> regionsMap,
-                                         Map<Long, Product> competitorsMap,
-                                         List<Map<String, Object>> result) {
-        Product withRegions = regionsMap.get(product.getId());
-        Product withCompetitors = competitorsMap.get(product.getId());
-
-        if (withRegions != null && !withRegions.getRegionDataList().isEmpty()) {
-            processRegionsWithCompetitors(withRegions, withCompetitors, productData, result);
-        } else if (withCompetitors != null && !withCompetitors.getCompetitorDataList().isEmpty()) {
-            processCompetitorsOnly(withCompetitors, productData, result);
-        } else {
-            result.add(productData);
-        }
-    }
-
-    private void processRegionsWithCompetitors(Product withRegions,
-                                               Product withCompetitors,
-                                               Map<String, Object> productData,
-                                               List<Map<String, Object>> result) {
-        for (RegionData regionData : withRegions.getRegionDataList()) {
-            Map<String, Object> rowData = new HashMap<>(productData);
-            rowData.putAll(extractFieldsWithDescriptions(regionData, "regiondata"));
-
-            if (withCompetitors != null && !withCompetitors.getCompetitorDataList().isEmpty()) {
-                for (CompetitorData competitorData : withCompetitors.getCompetitorDataList()) {
-                    Map<String, Object> fullRowData = new HashMap<>(rowData);
-                    fullRowData.putAll(extractFieldsWithDescriptions(competitorData, "competitordata"));
-                    result.add(fullRowData);
-                }
-            } else {
-                result.add(rowData);
-            }
-        }
-    }
-
-    private void processCompetitorsOnly(Product withCompetitors,
-                                        Map<String, Object> productData,
-                                        List<Map<String, Object>> result) {
-        for (CompetitorData competitorData : withCompetitors.getCompetitorDataList()) {
-            Map<String, Object> fullRowData = new HashMap<>(productData);
-            fullRowData.putAll(extractFieldsWithDescriptions(competitorData, "competitordata"));
-            result.add(fullRowData);
-        }
-    }
-
-    /**
-     * Извлекает значения полей с оптимизированной обработкой ошибок
+     * Собирает ключи полей, которые нужно выбрать из БД для экспорта:
+     * сначала включенные поля в порядке позиций экспорта, затем поля стратегий цепочки
      */
-    private Map<String, Object> extractFieldsWithDescriptions(Object object, String prefix) {
-        Map<String, Object> fields = new HashMap<>();
-        try {
-            for (Field field : object.getClass().getDeclaredFields()) {
-                processField(field, object, prefix, fields);
-            }
-        } catch (Exception e) {
-            log.error("Ошибка извлечения полей для {}: {}", object.getClass().getSimpleName(), e.getMessage());
-        }
+    private Set<String> getRequiredFields(ExportConfig exportConfig, StrategyChain chain) {
+        Set<String> fields = exportConfig.getFields().stream()
+                .filter(ExportField::isEnabled)
+                .sorted(Comparator.comparingInt(ExportField::getPosition))
+                .map(ExportField::getSourceField)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        fields.addAll(chain.getRequiredSourceFields());
         return fields;
     }
 
-    private void processField(Field field, Object object, String prefix, Map<String, Object> fields) {
-        FieldDescription description = field.getAnnotation(FieldDescription.class);
-        if (description != null && !description.skipMapping()) {
-            try {
-                field.setAccessible(true);
-                Object value = field.get(object);
-                if (value != null) {
-                    fields.put(prefix + "." + field.getName(), value);
-                }
-            } catch (Exception e) {
-                log.warn("Ошибка доступа к полю {}: {}", field.getName(), e.getMessage());
-            }
-        }
-    }
-
-    private String generateFileName(FileMetadata originalFile, String exportType) {
-        String baseName = originalFile.getOriginalFilename().replaceFirst("[.][^.]+$", "");
-        return String.format("%s_export.%s", baseName, exportType.toLowerCase());
-    }
 }
@@ -0,0 +1,224 @@
+package by.zoomos_v2.service.file.export.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * Компактный индекс ключей задания для проверки вхождения.
+ * Ключи хранятся отсортированными и без повторов в одном массиве байт UTF-8 со смещениями,
+ * поиск - двоичный по кодовым точкам. Перед поиском проверяется фильтр Блума, который
+ * отсекает большую часть отсутствующих ключей без обращения к массиву.
+ * Проверка не создает объектов: искомое значение обрезается по краям и приводится
+ * к верхнему регистру посимвольно прямо при сравнении.
+ * Занимает около 15 байт на ключ против ~100 байт у HashSet строк
+ */
+public final class TaskKeyIndex {
+    private static final int BLOOM_BITS_PER_KEY = 10;
+    private static final int BLOOM_HASHES = 5;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final byte[] arena;
+    private final int[] offsets;
+    private final long[] bloom;
+    private final int bloomBits;
+
+    private TaskKeyIndex(byte[] arena, int[] offsets) {
+        this.arena = arena;
+        this.offsets = offsets;
+        this.bloomBits = Math.max(Long.SIZE, size() * BLOOM_BITS_PER_KEY);
+        this.bloom = new long[(bloomBits + Long.SIZE - 1) / Long.SIZE];
+        for (int i = 0; i < size(); i++) {
+            addToBloom(hashKey(i));
+        }
+    }
+
+    /**
+     * Строит индекс по набору ключей. Ключи сохраняются как есть, null пропускается
+     */
+    public static TaskKeyIndex of(Collection<String> keys) {
+        byte[][] encoded = keys.stream()
+                .filter(Objects::nonNull)
+                .map(key -> key.getBytes(StandardCharsets.UTF_8))
+                .toArray(byte[][]::new);
+        // Порядок байт UTF-8 без знака совпадает с порядком кодовых точек
+        Arrays.sort(encoded, Arrays::compareUnsigned);
+
+        int count = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            if (i == 0 || !Arrays.equals(encoded[i], encoded[i - 1])) {
+                encoded[count++] = encoded[i];
+                totalBytes += encoded[i].length;
+            }
+        }
+        if (totalBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Слишком большой набор ключей задания: " + totalBytes + " байт");
+        }
+
+        byte[] arena = new byte[(int) totalBytes];
+        int[] offsets = new int[count + 1];
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = position;
+            System.arraycopy(encoded[i], 0, arena, position, encoded[i].length);
+            position += encoded[i].length;
+        }
+        offsets[count] = position;
+        return new TaskKeyIndex(arena, offsets);
+    }
+
+    /**
+     * Проверяет, есть ли значение в задании.
+     * Значение сравнивается без пробелов по краям и в верхнем регистре, null считается пустой строкой
+     */
+    public boolean contains(CharSequence value) {
+        CharSequence probe = value != null ? value : "";
+        int start = 0;
+        int end = probe.length();
+        while (start < end && probe.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && probe.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        if (!mightContain(hashProbe(probe, start, end))) {
+            return false;
+        }
+
+        int low = 0;
+        int high = size() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(probe, start, end, middle);
+            if (comparison == 0) {
+                return true;
+            }
+            if (comparison > 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Количество ключей
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Объем памяти, занимаемой индексом, в байтах
+     */
+    public long memoryBytes() {
+        return arena.length + (long) offsets.length * Integer.BYTES + (long) bloom.length * Long.BYTES;
+    }
+
+    private int compare(CharSequence probe, int start, int end, int key) {
+        int index = start;
+        int position = offsets[key];
+        int keyEnd = offsets[key + 1];
+        while (index < end && position < keyEnd) {
+            int probeCodePoint = Character.codePointAt(probe, index);
+            index += Character.charCount(probeCodePoint);
+            probeCodePoint = Character.toUpperCase(probeCodePoint);
+
+            int keyCodePoint = decodeCodePoint(position);
+            position += encodedLength(arena[position]);
+            if (probeCodePoint != keyCodePoint) {
+                return Integer.compare(probeCodePoint, keyCodePoint);
+            }
+        }
+        if (index < end) {
+            return 1;
+        }
+        return position < keyEnd ? -1 : 0;
+    }
+
+    private int decodeCodePoint(int position) {
+        int first = arena[position] & 0xff;
+        if (first < 0x80) {
+            return first;
+        }
+        if (first < 0xe0) {
+            return ((first & 0x1f) << 6) | (arena[position + 1] & 0x3f);
+        }
+        if (first < 0xf0) {
+            return ((first & 0x0f) << 12) | ((arena[position + 1] & 0x3f) << 6) | (arena[position + 2] & 0x3f);
+        }
+        return ((first & 0x07) << 18) | ((arena[position + 1] & 0x3f) << 12)
+                | ((arena[position + 2] & 0x3f) << 6) | (arena[position + 3] & 0x3f);
+    }
+
+    private static int encodedLength(byte first) {
+        int value = first & 0xff;
+        if (value < 0x80) {
+            return 1;
+        }
+        if (value < 0xe0) {
+            return 2;
+        }
+        return value < 0xf0 ? 3 : 4;
+    }
+
+    /**
+     * Хеш ключа и искомого значения считается по одинаковой последовательности кодовых точек
+     */
+    private long hashKey(int key) {
+        long hash = FNV_OFFSET;
+        for (int position = offsets[key]; position < offsets[key + 1]; position += encodedLength(arena[position])) {
+            hash = (hash ^ decodeCodePoint(position)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    private static long hashProbe(CharSequence probe, int start, int end) {
+        long hash = FNV_OFFSET;
+        int index = start;
+        while (index < end) {
+            int codePoint = Character.codePointAt(probe, index);
+            index += Character.charCount(codePoint);
+            hash = (hash ^ Character.toUpperCase(codePoint)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    private void addToBloom(long hash) {
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = ((first + i * second) & Integer.MAX_VALUE) % bloomBits;
+            bloom[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(long hash) {
+        int first = (int) hash;
+        int second = (int) (hash >>> 32);
+        for (int i = 0; i < BLOOM_HASHES; i++) {
+            int bit = ((first + i * second) & Integer.MAX_VALUE) % bloomBits;
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -2,31 +2,42 @@ package by.zoomos_v2.service.file.export.service;
 
 import by.zoomos_v2.model.enums.DataSourceType;
 import by.zoomos_v2.repository.ProductRepository;
-import lombok.RequiredArgsConstructor;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 
 /**
  * Оптимизированный сервис для валидации и работы с заданиями.
  * Обеспечивает эффективную загрузку и проверку данных задания.
+ * Ключи заданий хранятся компактным индексом TaskKeyIndex в Caffeine-кэше, ограниченном
+ * по памяти: вес записи - объем индекса в байтах, лимит задается в мегабайтах.
+ * Записи задания сбрасываются при загрузке и удалении файлов задания, статистика попаданий
+ * публикуется в метриках cache.* с тегом cache=taskValidationKeys
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 public class TaskValidationService {
+    private static final String CACHE_NAME = "taskValidationKeys";
 
     private final ProductRepository productRepository;
 
     // Кэш для хранения ключей валидации по номеру задания
-    private final ConcurrentHashMap<String, Set<String>> taskValidationCache = new ConcurrentHashMap<>();
+    private final Cache<String, TaskKeyIndex> taskValidationCache;
 
     // Размер батча для загрузки ключей валидации
     private static final int BATCH_SIZE = 10000;
@@ -34,26 +45,54 @@ public class TaskValidationService {
     // Максимальное количество параллельных потоков
     private static final int MAX_THREADS = Runtime.getRuntime().availableProcessors();
 
+    public TaskValidationService(ProductRepository productRepository,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${app.task-validation.cache.max-size-mb:256}") long maxSizeMb) {
+        this.productRepository = productRepository;
+        this.taskValidationCache = Caffeine.newBuilder()
+                .maximumWeight(maxSizeMb * 1024 * 1024)
+                .weigher((String taskNumber, TaskKeyIndex index) ->
+                        (int) Math.min(Integer.MAX_VALUE, index.memoryBytes()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, taskValidationCache, CACHE_NAME);
+    }
+
     /**
-     * Создает набор ключей валидации для указанного задания.
-     * Ключ формируется в формате: productId_category_retailCode
+     * Возвращает индекс ключей валидации (кодов розничных сетей) для указанного задания
      *
      * @param taskNumber номер задания
-     * @return множество ключей валидации
+     * @return индекс ключей валидации
      */
     @Transactional(readOnly = true)
-    public Set<String> createValidationKeysForTask(String taskNumber) {
-        // Проверяем наличие в кэше
-        if (taskValidationCache.containsKey(taskNumber)) {
-            Set<String> cachedKeys = taskValidationCache.get(taskNumber);
-            if (cachedKeys != null && !cachedKeys.isEmpty()) {
-                log.debug("Используем кэшированные ключи валидации для задания {}: {} ключей",
-                        taskNumber, cachedKeys.size());
-                return cachedKeys;
-            }
-            // Удаляем пустой или null кэш
-            taskValidationCache.remove(taskNumber);
-        }
+    public TaskKeyIndex getTaskKeyIndex(String taskNumber) {
+        // Загрузка атомарна по заданию: параллельные экспорты ждут одну загрузку, а сброс кэша
+        // во время загрузки удаляет ее результат после завершения. Пустые наборы не кэшируются
+        TaskKeyIndex index = taskValidationCache.get(taskNumber, this::loadTaskKeyIndex);
+        return index != null ? index : TaskKeyIndex.of(List.of());
+    }
+
+    /**
+     * Строит индекс ключей задания для кэша
+     *
+     * @param taskNumber номер задания
+     * @return индекс ключей или null для задания без ключей, чтобы пустой результат не кэшировался
+     */
+    private TaskKeyIndex loadTaskKeyIndex(String taskNumber) {
+        Set<String> validationKeys = createValidationKeysForTask(taskNumber);
+        TaskKeyIndex index = TaskKeyIndex.of(validationKeys);
+        log.info("Построен индекс ключей задания {}: {} ключей, {} КБ",
+                taskNumber, index.size(), index.memoryBytes() / 1024);
+        return index.isEmpty() ? null : index;
+    }
+
+    /**
+     * Загружает набор ключей валидации для указанного задания из БД
+     *
+     * @param taskNumber номер задания
+     * @return множество ключей валидации
+     */
+    private Set<String> createValidationKeysForTask(String taskNumber) {
 
         log.info("Создание ключей валидации для задания {}. Начало выполнения...", taskNumber);
         long startTime = System.currentTimeMillis();
@@ -70,12 +109,13 @@ public class TaskValidationService {
                 return loadKeysInSingleQuery(taskNumber);
             }
 
-            // Для больших заданий применяем батчевую загрузку
-            return loadKeysInBatches(taskNumber, totalRecords);
+            // Для больших заданий применяем параллельную загрузку по диапазонам id
+            return loadKeysInRanges(taskNumber);
 
-        } catch (Exception e) {
+        } catch (RuntimeException e) {
+            // Пустой набор отфильтровал бы все строки выгрузки, поэтому ошибка прерывает экспорт
             log.error("Ошибка при создании ключей валидации для задания {}: {}", taskNumber, e.getMessage(), e);
-            return new HashSet<>();
+            throw e;
         } finally {
             log.info("Создание ключей валидации для задания {} завершено за {} мс",
                     taskNumber, System.currentTimeMillis() - startTime);
@@ -89,103 +129,81 @@ public class TaskValidationService {
     private Set<String> loadKeysInSingleQuery(String taskNumber) {
         long startTime = System.currentTimeMillis();
 
-        try {
-            Set<String> validationKeys = productRepository.findValidationKeysByTaskNumberOptimized(
-                    DataSourceType.TASK.name(), taskNumber);
-
-            if (validationKeys == null) {
-                log.warn("Repository вернул null вместо пустого набора для задания {}", taskNumber);
-                validationKeys = new HashSet<>();
-            }
+        Set<String> validationKeys = productRepository.findValidationKeysByTaskNumberOptimized(
+                DataSourceType.TASK.name(), taskNumber);
 
-            log.info("Загружено {} ключей валидации одним запросом за {} мс",
-                    validationKeys.size(), System.currentTimeMillis() - startTime);
+        if (validationKeys == null) {
+            log.warn("Repository вернул null вместо пустого набора для задания {}", taskNumber);
+            validationKeys = new HashSet<>();
+        }
 
-            // Кэшируем только непустой результат
-            if (!validationKeys.isEmpty()) {
-                taskValidationCache.put(taskNumber, validationKeys);
-            }
+        log.info("Загружено {} ключей валидации одним запросом за {} мс",
+                validationKeys.size(), System.currentTimeMillis() - startTime);
 
-            return validationKeys;
-        } catch (Exception e) {
-            log.error("Ошибка при выполнении loadKeysInSingleQuery для задания {}: {}",
-                    taskNumber, e.getMessage(), e);
-            return new HashSet<>();
-        }
+        return validationKeys;
     }
 
     /**
-     * Загружает ключи валидации батчами с использованием параллельных потоков.
+     * Загружает ключи валидации параллельно по непересекающимся диапазонам id записей site_data.
+     * Каждый поток читает свой диапазон одним запросом, поэтому записи не пропускаются
+     * и не читаются повторно, а общий объем работы БД линеен по размеру задания.
+     * Ширина диапазона считается по числу записей site_data задания и ширине их интервала id,
+     * чтобы в диапазон в среднем попадало около BATCH_SIZE записей.
      * Подходит для больших заданий.
      */
-    private Set<String> loadKeysInBatches(String taskNumber, long totalRecords) {
+    private Set<String> loadKeysInRanges(String taskNumber) {
         long startTime = System.currentTimeMillis();
 
+        ProductRepository.IdRange idRange = productRepository.findCompetitorIdRangeByTaskNumber(
+                DataSourceType.TASK.name(), taskNumber);
+        if (idRange == null || idRange.getMinId() == null) {
+            log.info("Для задания {} нет данных конкурентов", taskNumber);
+            return new HashSet<>();
+        }
+
+        long minId = idRange.getMinId();
+        long maxId = idRange.getMaxId();
+        long idSpan = maxId - minId + 1;
+        long rangeCount = Math.min(idSpan, Math.max(MAX_THREADS, (idRange.getRowCount() + BATCH_SIZE - 1) / BATCH_SIZE));
+        long rangeWidth = (idSpan + rangeCount - 1) / rangeCount;
+        log.info("Задание ({} записей) будет загружено диапазонами id [{}..{}] шириной {}",
+                idRange.getRowCount(), minId, maxId, rangeWidth);
+
+        // Создаем потокобезопасный набор для результатов
+        Set<String> validationKeys = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(MAX_THREADS);
+
         try {
-            // Рассчитываем количество батчей
-            int totalBatches = (int) Math.ceil((double) totalRecords / BATCH_SIZE);
-            log.info("Задание будет загружено {} батчами по {} записей", totalBatches, BATCH_SIZE);
-
-            // Создаем потокобезопасный набор для результатов
-            Set<String> validationKeys = ConcurrentHashMap.newKeySet(Math.toIntExact(totalRecords));
-
-            // Параллельная загрузка батчами
-            ExecutorService executor = Executors.newFixedThreadPool(MAX_THREADS);
-
-            try {
-                for (int batch = 0; batch < totalBatches; batch++) {
-                    final int currentBatch = batch;
-
-                    executor.submit(() -> {
-                        int offset = currentBatch * BATCH_SIZE;
-                        log.debug("Загрузка батча {}/{} (смещение: {})", currentBatch + 1, totalBatches, offset);
-
-                        try {
-                            Set<String> batchKeys = productRepository.findValidationKeysByTaskNumberPaginated(
-                                    DataSourceType.TASK.name(), taskNumber, BATCH_SIZE, offset);
-
-                            if (batchKeys != null) {
-                                validationKeys.addAll(batchKeys);
-                                log.debug("Батч {}/{} загружен, добавлено {} ключей, всего: {}",
-                                        currentBatch + 1, totalBatches, batchKeys.size(), validationKeys.size());
-                            } else {
-                                log.warn("Batch {}/{} вернул null вместо пустого набора",
-                                        currentBatch + 1, totalBatches);
-                            }
-                        } catch (Exception e) {
-                            log.error("Ошибка при загрузке батча {}/{} для задания {}: {}",
-                                    currentBatch + 1, totalBatches, taskNumber, e.getMessage(), e);
-                        }
-                    });
-                }
-
-                // Корректно завершаем ExecutorService и ждем выполнения всех задач
-                executor.shutdown();
-                if (!executor.awaitTermination(30, TimeUnit.MINUTES)) {
-                    log.warn("Превышено время ожидания загрузки ключей валидации. Принудительное завершение.");
-                    executor.shutdownNow();
-                }
-
-                log.info("Загружено {} ключей валидации батчами за {} мс",
-                        validationKeys.size(), System.currentTimeMillis() - startTime);
-
-                // Кэшируем только непустой результат
-                if (!validationKeys.isEmpty()) {
-                    taskValidationCache.put(taskNumber, validationKeys);
-                }
-
-                return validationKeys;
-
-            } catch (Exception e) {
-                log.error("Ошибка при батчевой загрузке ключей валидации: {}", e.getMessage(), e);
-                executor.shutdownNow();
-                return validationKeys; // Возвращаем то, что успели загрузить
+            List<Future<?>> futures = new ArrayList<>();
+            for (long fromId = minId; fromId <= maxId; fromId += rangeWidth) {
+                long from = fromId;
+                long to = Math.min(maxId, fromId + rangeWidth - 1);
+                futures.add(executor.submit(() -> {
+                    Set<String> rangeKeys = productRepository.findValidationKeysByTaskNumberInIdRange(
+                            DataSourceType.TASK.name(), taskNumber, from, to);
+                    validationKeys.addAll(rangeKeys);
+                    log.debug("Диапазон [{}..{}] загружен, добавлено {} ключей", from, to, rangeKeys.size());
+                }));
             }
-        } catch (Exception e) {
-            log.error("Критическая ошибка в loadKeysInBatches для задания {}: {}",
-                    taskNumber, e.getMessage(), e);
-            return new HashSet<>();
+
+            // Неполный набор ключей исказит фильтрацию, поэтому ошибка диапазона прерывает загрузку
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Загрузка ключей валидации прервана", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ошибка загрузки диапазона ключей валидации: "
+                    + e.getCause().getMessage(), e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
+
+        log.info("Загружено {} ключей валидации из {} диапазонов за {} мс",
+                validationKeys.size(), (idSpan + rangeWidth - 1) / rangeWidth, System.currentTimeMillis() - startTime);
+
+        return validationKeys;
     }
 
     /**
@@ -196,7 +214,24 @@ public class TaskValidationService {
      */
     public void clearValidationCache(String taskNumber) {
         log.debug("Очистка кэша ключей валидации для задания {}", taskNumber);
-        taskValidationCache.remove(taskNumber);
+        taskValidationCache.invalidate(taskNumber);
+    }
+
+    /**
+     * Очищает кэш ключей валидации заданий, товары которых загружены из файла.
+     * Вызывается после загрузки файла задания и перед его удалением
+     *
+     * @param fileId идентификатор файла
+     * @return номера заданий файла, пустой список для файлов без заданий
+     */
+    @Transactional(readOnly = true)
+    public List<String> clearValidationCacheForFile(Long fileId) {
+        List<String> taskNumbers = productRepository.findTaskNumbersByFileId(fileId, DataSourceType.TASK);
+        if (!taskNumbers.isEmpty()) {
+            log.debug("Очистка кэша ключей валидации заданий {} файла {}", taskNumbers, fileId);
+            taskValidationCache.invalidateAll(taskNumbers);
+        }
+        return taskNumbers;
     }
 
     /**
@@ -204,7 +239,7 @@ public class TaskValidationService {
      */
     public void clearAllValidationCache() {
         log.debug("Очистка всего кэша ключей валидации");
-        taskValidationCache.clear();
+        taskValidationCache.invalidateAll();
     }
 
     /**
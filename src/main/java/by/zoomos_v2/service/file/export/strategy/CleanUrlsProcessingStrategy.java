@@ -11,6 +11,7 @@ import org.springframework.stereotype.Component;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Slf4j
 @Component
@@ -31,14 +32,12 @@ public class CleanUrlsProcessingStrategy implements DataProcessingStrategy {
     }
 
     @Override
-    public List<Map<String, Object>> processData(List<Map<String, Object>> data,
-                                                 ExportConfig exportConfig,
-                                                 BatchProcessingData batchProcessingData) {
+    public StrategyStage openStage(ExportConfig exportConfig, BatchProcessingData batchProcessingData) {
         log.debug("Начало обработки данных - очистка URL конкурентов");
 
         List<String> competitors = getCompetitorsFromConfig(exportConfig);
 
-        for (Map<String, Object> record : data) {
+        return (record, downstream) -> {
             // Сначала проверяем имя конкурента
             Object competitorName = record.get("competitordata.competitorName");
             if (competitorName != null) {
@@ -53,8 +52,8 @@ public class CleanUrlsProcessingStrategy implements DataProcessingStrategy {
                     }
                 }
             }
-        }
-        return data;
+            downstream.accept(record);
+        };
     }
 
     private List<String> getCompetitorsFromConfig(ExportConfig exportConfig) {
@@ -92,4 +91,9 @@ public class CleanUrlsProcessingStrategy implements DataProcessingStrategy {
         return ProcessingStrategyType.CLEAN_URLS;
     }
 
+    @Override
+    public Set<String> getRequiredSourceFields() {
+        return Set.of("competitordata.competitorName");
+    }
+
     }
@@ -2,6 +2,7 @@ package by.zoomos_v2.service.file.export.strategy;
 
 import by.zoomos_v2.model.ExportConfig;
 import by.zoomos_v2.service.file.BatchProcessingData;
+import by.zoomos_v2.service.file.export.service.ExportQueryFilter;
 
 import java.util.List;
 import java.util.Map;
@@ -14,16 +15,31 @@ import java.util.Set;
 public interface DataProcessingStrategy {
 
     /**
-     * Обрабатывает данные в соответствии со стратегией
+     * Открывает потоковую стадию стратегии для одной выгрузки.
+     * Подготовка (загрузка заданий, справочников, параметров) выполняется один раз при открытии
      *
-     * @param data                исходные данные для обработки
      * @param exportConfig        конфигурация экспорта
      * @param batchProcessingData статистика обработки
-     * @return обработанные данные
+     * @return стадия обработки строк
      */
-    List<Map<String, Object>> processData(List<Map<String, Object>> data,
-                                          ExportConfig exportConfig,
-                                          BatchProcessingData batchProcessingData);
+    StrategyStage openStage(ExportConfig exportConfig, BatchProcessingData batchProcessingData);
+
+    /**
+     * Возвращает фильтр, который стратегия выполняет в запросе к БД вместо отбора строк в памяти
+     *
+     * @param exportConfig конфигурация экспорта
+     * @return фильтр или null, если стратегия обрабатывает строки только в памяти
+     */
+    default ExportQueryFilter getQueryFilter(ExportConfig exportConfig) {
+        return null;
+    }
+
+    /**
+     * Открывает стадию для строк, уже отобранных в запросе фильтром {@link #getQueryFilter}
+     */
+    default StrategyStage openFilteredStage(ExportConfig exportConfig, BatchProcessingData batchProcessingData) {
+        return openStage(exportConfig, batchProcessingData);
+    }
 
     /**
      * Проверяет, подходит ли данная стратегия для указанной конфигурации
@@ -45,6 +61,22 @@ public interface DataProcessingStrategy {
         return List.of();
     }
 
+    /**
+     * Возвращает ключи полей, которые стратегия читает из строк данных.
+     * Эти поля выбираются из БД, даже если они не включены в конфигурацию экспорта
+     */
+    default Set<String> getRequiredSourceFields() {
+        return Set.of();
+    }
+
+    /**
+     * Показывает, зависит ли результат стратегии от общих данных вне выгружаемых файлов
+     * (задания, справочник розничных сетей)
+     */
+    default boolean dependsOnSharedData() {
+        return false;
+    }
+
     /**
      * Возвращает список требуемых параметров
      */
@@ -5,18 +5,13 @@ import by.zoomos_v2.service.file.BatchProcessingData;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-import java.util.Map;
-
 @Slf4j
 @Component
 public class DefaultProcessingStrategy implements DataProcessingStrategy {
     @Override
-    public List<Map<String, Object>> processData(List<Map<String, Object>> data,
-                                                 ExportConfig exportConfig,
-                                                 BatchProcessingData batchProcessingData) {
+    public StrategyStage openStage(ExportConfig exportConfig, BatchProcessingData batchProcessingData) {
         log.debug("Применяется стандартная стратегия обработки данных");
-        return data;
+        return StrategyStage.identity();
     }
 
     @Override
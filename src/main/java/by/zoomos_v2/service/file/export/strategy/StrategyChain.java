@@ -0,0 +1,146 @@
+package by.zoomos_v2.service.file.export.strategy;
+
+import by.zoomos_v2.model.ExportConfig;
+import by.zoomos_v2.service.file.BatchProcessingData;
+import by.zoomos_v2.service.file.export.service.ExportQueryFilter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Цепочка стратегий, объявленная в конфигурации экспорта.
+ * Стадии стратегий соединяются последовательно: строка проходит все стадии за один проход
+ */
+public class StrategyChain {
+    private final List<DataProcessingStrategy> strategies;
+
+    public StrategyChain(List<DataProcessingStrategy> strategies) {
+        this.strategies = List.copyOf(strategies);
+    }
+
+    public List<DataProcessingStrategy> getStrategies() {
+        return strategies;
+    }
+
+    /**
+     * Типы стратегий в порядке применения
+     */
+    public List<ProcessingStrategyType> getTypes() {
+        return strategies.stream().map(DataProcessingStrategy::getStrategyType).toList();
+    }
+
+    /**
+     * Поля, которые читают стратегии цепочки
+     */
+    public Set<String> getRequiredSourceFields() {
+        Set<String> fields = new LinkedHashSet<>();
+        strategies.forEach(strategy -> fields.addAll(strategy.getRequiredSourceFields()));
+        return fields;
+    }
+
+    /**
+     * Описания параметров всех стратегий цепочки
+     */
+    public List<StrategyParameterDescriptor> getParameterDescriptors() {
+        return strategies.stream()
+                .flatMap(strategy -> strategy.getParameterDescriptors().stream())
+                .toList();
+    }
+
+    /**
+     * Обязательные параметры всех стратегий цепочки
+     */
+    public Set<String> getRequiredParameters() {
+        Set<String> parameters = new LinkedHashSet<>();
+        strategies.forEach(strategy -> parameters.addAll(strategy.getRequiredParameters()));
+        return parameters;
+    }
+
+    /**
+     * Зависит ли результат хотя бы одной стратегии от общих данных
+     */
+    public boolean dependsOnSharedData() {
+        return strategies.stream().anyMatch(DataProcessingStrategy::dependsOnSharedData);
+    }
+
+    /**
+     * Фильтр первой стратегии цепочки, выполняемый в запросе к БД.
+     * Стратегии после первой получают строки, измененные предыдущими стадиями,
+     * поэтому их отбор выполняется только в памяти
+     *
+     * @return фильтр или null
+     */
+    public ExportQueryFilter getQueryFilter(ExportConfig exportConfig) {
+        return strategies.isEmpty() ? null : strategies.get(0).getQueryFilter(exportConfig);
+    }
+
+    /**
+     * Открывает стадии всех стратегий и соединяет их с получателем результата
+     *
+     * @param exportConfig        конфигурация экспорта
+     * @param batchProcessingData статистика обработки
+     * @param sink                получатель строк после последней стадии
+     * @return вход цепочки
+     */
+    public OpenChain open(ExportConfig exportConfig, BatchProcessingData batchProcessingData,
+                          Consumer<Map<String, Object>> sink) {
+        return open(exportConfig, batchProcessingData, sink, false);
+    }
+
+    /**
+     * Открывает стадии всех стратегий и соединяет их с получателем результата
+     *
+     * @param exportConfig        конфигурация экспорта
+     * @param batchProcessingData статистика обработки
+     * @param sink                получатель строк после последней стадии
+     * @param queryFiltered       строки уже отобраны фильтром {@link #getQueryFilter} в запросе
+     * @return вход цепочки
+     */
+    public OpenChain open(ExportConfig exportConfig, BatchProcessingData batchProcessingData,
+                          Consumer<Map<String, Object>> sink, boolean queryFiltered) {
+        List<StrategyStage> stages = new ArrayList<>(strategies.size());
+        for (int i = 0; i < strategies.size(); i++) {
+            DataProcessingStrategy strategy = strategies.get(i);
+            stages.add(i == 0 && queryFiltered
+                    ? strategy.openFilteredStage(exportConfig, batchProcessingData)
+                    : strategy.openStage(exportConfig, batchProcessingData));
+        }
+
+        Consumer<Map<String, Object>> input = sink;
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            StrategyStage stage = stages.get(i);
+            Consumer<Map<String, Object>> downstream = input;
+            input = row -> stage.process(row, downstream);
+        }
+        return new OpenChain(input, stages);
+    }
+
+    /**
+     * Открытая цепочка стадий одной выгрузки
+     */
+    public static class OpenChain implements Consumer<Map<String, Object>> {
+        private final Consumer<Map<String, Object>> input;
+        private final List<StrategyStage> stages;
+
+        private OpenChain(Consumer<Map<String, Object>> input, List<StrategyStage> stages) {
+            this.input = input;
+            this.stages = stages;
+        }
+
+        @Override
+        public void accept(Map<String, Object> row) {
+            input.accept(row);
+        }
+
+        /**
+         * Завершает стадии в порядке цепочки
+         */
+        public void finish() {
+            stages.forEach(StrategyStage::finish);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package by.zoomos_v2.service.file.export.strategy;
 
+import by.zoomos_v2.model.ExportConfig;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -37,6 +38,17 @@ public class StrategyManager {
                 .orElseThrow(() -> new IllegalArgumentException("Стратегия не найдена: " + type));
     }
 
+    /**
+     * Собирает цепочку стратегий, объявленную в конфигурации экспорта
+     */
+    public StrategyChain getChain(ExportConfig exportConfig) {
+        List<DataProcessingStrategy> chain = exportConfig.getStrategyTypes().stream()
+                .map(this::getStrategy)
+                .toList();
+        log.debug("Цепочка стратегий: {}", exportConfig.getStrategyTypes());
+        return new StrategyChain(chain);
+    }
+
     /**
      * Получает список всех доступных типов стратегий
      */
@@ -73,4 +85,14 @@ public class StrategyManager {
 
         log.debug("Параметры стратегии {} успешно провалидированы", type);
     }
+
+    /**
+     * Валидирует параметры всех стратегий цепочки
+     * @throws IllegalArgumentException если параметры невалидны
+     */
+    public void validateChainParameters(ExportConfig exportConfig) {
+        for (ProcessingStrategyType type : exportConfig.getStrategyTypes()) {
+            validateStrategyParameters(type, exportConfig.getParams());
+        }
+    }
 }
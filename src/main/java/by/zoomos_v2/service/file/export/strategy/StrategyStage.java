@@ -0,0 +1,34 @@
+package by.zoomos_v2.service.file.export.strategy;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Потоковая стадия обработки строк экспорта.
+ * Стадия получает строки по одной и передает дальше ноль или одну (или несколько) строк,
+ * поэтому цепочка стадий выполняется за один проход без накопления выгрузки в памяти.
+ * Экземпляр стадии открывается на одну выгрузку и используется из одного потока
+ */
+public interface StrategyStage {
+
+    /**
+     * Обрабатывает строку и передает результат следующей стадии
+     *
+     * @param row        строка данных
+     * @param downstream получатель обработанных строк
+     */
+    void process(Map<String, Object> row, Consumer<Map<String, Object>> downstream);
+
+    /**
+     * Вызывается после последней строки выгрузки
+     */
+    default void finish() {
+    }
+
+    /**
+     * Стадия, передающая строки без изменений
+     */
+    static StrategyStage identity() {
+        return (row, downstream) -> downstream.accept(row);
+    }
+}
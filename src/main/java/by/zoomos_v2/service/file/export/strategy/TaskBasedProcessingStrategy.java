@@ -1,9 +1,11 @@
 package by.zoomos_v2.service.file.export.strategy;
 
 import by.zoomos_v2.model.ExportConfig;
-import by.zoomos_v2.model.RetailNetworkDirectory;
+import by.zoomos_v2.service.directory.RetailDirectorySnapshot;
 import by.zoomos_v2.service.directory.RetailNetworkDirectoryService;
 import by.zoomos_v2.service.file.BatchProcessingData;
+import by.zoomos_v2.service.file.export.service.ExportQueryFilter;
+import by.zoomos_v2.service.file.export.service.TaskKeyIndex;
 import by.zoomos_v2.service.file.export.service.TaskValidationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -13,17 +15,16 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
-import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
  * Оптимизированная стратегия обработки данных на основе задания.
  * Фильтрует данные по заданию и обогащает их справочной информацией.
- * Реализует батчевую и параллельную обработку для повышения производительности.
+ * Задание и справочник загружаются один раз при открытии стадии, строки обрабатываются потоком.
  */
 @Slf4j
 @Component
@@ -34,140 +35,109 @@ public class TaskBasedProcessingStrategy implements DataProcessingStrategy {
     private final RetailNetworkDirectoryService directoryService;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
 
-    // Размер батча для обработки данных
-    private static final int BATCH_SIZE = 5000;
-
-    // Максимальное количество параллельных потоков
-    private static final int MAX_THREADS = Runtime.getRuntime().availableProcessors();
-
     @Override
-    public List<Map<String, Object>> processData(List<Map<String, Object>> data,
-                                                 ExportConfig exportConfig,
-                                                 BatchProcessingData batchProcessingData) {
+    public StrategyStage openStage(ExportConfig exportConfig, BatchProcessingData batchProcessingData) {
         String taskNumber = getTaskNumber(exportConfig);
-        log.info("Начало оптимизированной обработки данных по заданию {}. Количество записей: {}",
-                taskNumber, data.size());
-
-        try {
-            // 1. Получаем ключи валидации из задания (теперь только competitorAdditional)
-            long startTime = System.currentTimeMillis();
-            Set<String> validationKeys = taskValidationService.createValidationKeysForTask(taskNumber);
-            log.info("Получено {} ключей валидации из задания за {} мс",
-                    validationKeys.size(), System.currentTimeMillis() - startTime);
-
-            // Преобразуем в HashSet для быстрого поиска
-            Set<String> validationKeysSet = new HashSet<>(validationKeys);
-
-            // 2. Собираем все коды розничных сетей для оптимизации запросов к справочнику
-            startTime = System.currentTimeMillis();
-            Set<String> retailCodes = data.stream()
-                    .map(row -> (String) row.get("competitordata.competitorAdditional"))
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toSet());
-
-            // 3. Загружаем справочник (это кэшируется в сервисе)
-            Map<String, RetailNetworkDirectory> directoryMap = directoryService.getDirectoryMap(
-                    new ArrayList<>(retailCodes)
-            );
-            log.info("Загружен справочник с {} записями за {} мс",
-                    directoryMap.size(), System.currentTimeMillis() - startTime);
-
-            // Получаем максимальную дату из параметров (если задана)
-            LocalDate maxDate = getMaxDateFromParams(exportConfig);
-            if (maxDate != null) {
-                log.info("Установлена максимальная дата: {}", maxDate);
-            }
-
-            // 4. Разбиваем данные на батчи для параллельной обработки
-            List<List<Map<String, Object>>> batches = partitionData(data, BATCH_SIZE);
-            log.info("Данные разбиты на {} батчей по {} записей", batches.size(), BATCH_SIZE);
-
-            // 5. Создаем ExecutorService для параллельной обработки
-            ExecutorService executor = Executors.newFixedThreadPool(MAX_THREADS);
-
-            try {
-                // 6. Обрабатываем батчи параллельно
-                startTime = System.currentTimeMillis();
-                List<Future<List<Map<String, Object>>>> futures = new ArrayList<>();
-
-                for (List<Map<String, Object>> batch : batches) {
-                    futures.add(executor.submit(() ->
-                            processBatch(batch, validationKeysSet, directoryMap, maxDate)));
-                }
-
-                // 7. Собираем результаты
-                List<Map<String, Object>> processedData = new ArrayList<>();
-                for (Future<List<Map<String, Object>>> future : futures) {
-                    processedData.addAll(future.get());
-                }
+        log.info("Начало потоковой обработки данных по заданию {}", taskNumber);
+
+        // 1. Получаем ключи валидации из задания (теперь только competitorAdditional)
+        long startTime = System.currentTimeMillis();
+        TaskKeyIndex validationKeys = taskValidationService.getTaskKeyIndex(taskNumber);
+        log.info("Получено {} ключей валидации из задания за {} мс",
+                validationKeys.size(), System.currentTimeMillis() - startTime);
+
+        // 2. Берем снимок справочника из памяти
+        RetailDirectorySnapshot directory = directoryService.getSnapshot();
+        log.info("Используется снимок справочника версии {} с {} записями", directory.version(), directory.size());
+
+        // Получаем максимальную дату из параметров (если задана)
+        LocalDate maxDate = getMaxDateFromParams(exportConfig);
+        if (maxDate != null) {
+            log.info("Установлена максимальная дата: {}", maxDate);
+        }
 
-                log.info("Параллельная обработка завершена за {} мс. Отфильтровано записей: {}/{}",
-                        System.currentTimeMillis() - startTime, processedData.size(), data.size());
+        return new TaskFilterStage(validationKeys, directory, maxDate, batchProcessingData);
+    }
 
-                // 8. Обновляем статистику
-                batchProcessingData.setSuccessCount(processedData.size());
+    /**
+     * Отбор строк по заданию и обогащение справочником выполняются в запросе к БД
+     */
+    @Override
+    public ExportQueryFilter getQueryFilter(ExportConfig exportConfig) {
+        return ExportQueryFilter.forTask(getTaskNumber(exportConfig));
+    }
 
-                return processedData;
-            } finally {
-                // Корректно завершаем ExecutorService
-                executor.shutdown();
-                try {
-                    if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
-                        executor.shutdownNow();
-                    }
-                } catch (InterruptedException e) {
-                    executor.shutdownNow();
-                    Thread.currentThread().interrupt();
-                }
-            }
-        } catch (Exception e) {
-            log.error("Ошибка при обработке данных: {}", e.getMessage(), e);
-            throw new IllegalStateException("Ошибка обработки данных: " + e.getMessage(), e);
+    /**
+     * Строки уже отобраны по заданию и обогащены в запросе, остается ограничение даты
+     */
+    @Override
+    public StrategyStage openFilteredStage(ExportConfig exportConfig, BatchProcessingData batchProcessingData) {
+        log.info("Отбор по заданию {} выполняется в запросе к БД", getTaskNumber(exportConfig));
+        LocalDate maxDate = getMaxDateFromParams(exportConfig);
+        if (maxDate != null) {
+            log.info("Установлена максимальная дата: {}", maxDate);
         }
+        return new TaskFilterStage(null, null, maxDate, batchProcessingData);
     }
 
     /**
-     * Обрабатывает один батч данных
-     *
-     * @param batch батч данных для обработки
-     * @param validationKeys набор ключей валидации
-     * @param directoryMap справочник
-     * @param maxDate максимальная дата для фильтрации (может быть null)
-     * @return обработанные данные
+     * Стадия фильтрации по заданию: пропускает строки из задания,
+     * ограничивает дату и обогащает строку данными справочника.
+     * Без ключей задания строки считаются отобранными и обогащенными в запросе
      */
-    private List<Map<String, Object>> processBatch(List<Map<String, Object>> batch,
-                                                   Set<String> validationKeys,
-                                                   Map<String, RetailNetworkDirectory> directoryMap,
-                                                   LocalDate maxDate) {
-        List<Map<String, Object>> result = new ArrayList<>();
-
-        for (Map<String, Object> row : batch) {
-            // Формируем ключ валидации - ТОЛЬКО по competitorAdditional
-            String validationKey = createValidationKey(row);
-
-            // Проверяем наличие в задании (быстрая проверка в HashSet)
-            if (validationKeys.contains(validationKey)) {
-                // Обрабатываем дату, если задана максимальная дата
-                if (maxDate != null) {
-                    processDateForRow(row, maxDate);
-                }
+    private class TaskFilterStage implements StrategyStage {
+        private final TaskKeyIndex validationKeys;
+        private final RetailDirectorySnapshot directory;
+        private final LocalDate maxDate;
+        private final BatchProcessingData batchProcessingData;
+        private long receivedCount;
+        private long acceptedCount;
+
+        private TaskFilterStage(TaskKeyIndex validationKeys,
+                                RetailDirectorySnapshot directory,
+                                LocalDate maxDate,
+                                BatchProcessingData batchProcessingData) {
+            this.validationKeys = validationKeys;
+            this.directory = directory;
+            this.maxDate = maxDate;
+            this.batchProcessingData = batchProcessingData;
+        }
 
-                // Обогащаем данными из справочника
-                enrichRowWithDirectory(row, directoryMap);
-                result.add(row);
+        @Override
+        public void process(Map<String, Object> row, Consumer<Map<String, Object>> downstream) {
+            receivedCount++;
+            // Проверяем наличие в задании (поиск в индексе без создания строк)
+            if (validationKeys != null && !validationKeys.contains(createValidationKey(row))) {
+                return;
+            }
+            // Обрабатываем дату, если задана максимальная дата
+            if (maxDate != null) {
+                processDateForRow(row, maxDate);
             }
+            // Обогащаем данными из справочника
+            if (directory != null) {
+                enrichRowWithDirectory(row, directory);
+            }
+            acceptedCount++;
+            downstream.accept(row);
         }
 
-        return result;
+        @Override
+        public void finish() {
+            log.info("Обработка по заданию завершена. Отфильтровано записей: {}/{}", acceptedCount, receivedCount);
+            batchProcessingData.setSuccessCount(acceptedCount);
+        }
     }
 
     /**
      * Создает ключ валидации из строки данных.
      * Используем ТОЛЬКО competitorAdditional в соответствии с новыми требованиями.
+     * Обрезка и верхний регистр применяются индексом при сравнении
      */
-    private String createValidationKey(Map<String, Object> row) {
+    private CharSequence createValidationKey(Map<String, Object> row) {
         // Получаем только значение competitorAdditional
-        return toString(row.get("competitordata.competitorAdditional")).toUpperCase();
+        Object value = row.get("competitordata.competitorAdditional");
+        return value instanceof CharSequence text ? text : toString(value);
     }
 
     /**
@@ -217,18 +187,14 @@ public class TaskBasedProcessingStrategy implements DataProcessingStrategy {
     }
 
     /**
-     * Обогащает строку данными из справочника
+     * Обогащает строку данными из снимка справочника
      */
-    private void enrichRowWithDirectory(Map<String, Object> row,
-                                        Map<String, RetailNetworkDirectory> directoryMap) {
-        String retailCode = (String) row.get("competitordata.competitorAdditional");
-        if (retailCode != null) {
-            RetailNetworkDirectory directory = directoryMap.get(retailCode);
-            if (directory != null) {
-                row.put("competitordata.competitorName", directory.getRetailName());
-                row.put("regiondata.region", directory.getRegionName());
-                row.put("regiondata.regionAddress", directory.getPhysicalAddress());
-            }
+    private void enrichRowWithDirectory(Map<String, Object> row, RetailDirectorySnapshot directory) {
+        RetailDirectorySnapshot.Entry entry = directory.get((String) row.get("competitordata.competitorAdditional"));
+        if (entry != null) {
+            row.put("competitordata.competitorName", entry.retailName());
+            row.put("regiondata.region", entry.regionName());
+            row.put("regiondata.regionAddress", entry.physicalAddress());
         }
     }
 
@@ -249,17 +215,6 @@ public class TaskBasedProcessingStrategy implements DataProcessingStrategy {
         return null;
     }
 
-    /**
-     * Разбивает данные на батчи заданного размера
-     */
-    private List<List<Map<String, Object>>> partitionData(List<Map<String, Object>> data, int batchSize) {
-        List<List<Map<String, Object>>> batches = new ArrayList<>();
-        for (int i = 0; i < data.size(); i += batchSize) {
-            batches.add(data.subList(i, Math.min(i + batchSize, data.size())));
-        }
-        return batches;
-    }
-
     /**
      * Получает номер задания из конфигурации
      */
@@ -285,6 +240,16 @@ public class TaskBasedProcessingStrategy implements DataProcessingStrategy {
         return ProcessingStrategyType.TASK_BASED_FILTER;
     }
 
+    @Override
+    public Set<String> getRequiredSourceFields() {
+        return Set.of("competitordata.competitorAdditional", "competitordata.competitorDate");
+    }
+
+    @Override
+    public boolean dependsOnSharedData() {
+        return true;
+    }
+
     @Override
     public List<StrategyParameterDescriptor> getParameterDescriptors() {
         return List.of(
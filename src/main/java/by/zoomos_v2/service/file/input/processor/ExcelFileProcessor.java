@@ -1,23 +1,47 @@
 package by.zoomos_v2.service.file.input.processor;
 
 import by.zoomos_v2.exception.FileProcessingException;
+import by.zoomos_v2.mapping.ClientMappingConfig;
 import by.zoomos_v2.model.FileMetadata;
 import by.zoomos_v2.model.FileType;
 import by.zoomos_v2.service.file.input.callback.ProcessingProgressCallback;
+import by.zoomos_v2.service.file.input.result.SheetImportResult;
 import by.zoomos_v2.service.file.input.service.StreamingFileProcessor;
+import by.zoomos_v2.service.mapping.MappingConfigService;
 import by.zoomos_v2.util.PathResolver;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.SharedStrings;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
 import org.springframework.stereotype.Component;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import static by.zoomos_v2.util.HeapSize.getHeapSizeAsString;
 
@@ -29,13 +53,17 @@ import static by.zoomos_v2.util.HeapSize.getHeapSizeAsString;
 public class ExcelFileProcessor implements FileProcessor, StreamingFileProcessor {
 
     private static final int BATCH_SIZE = 1000;
+    private static final int MAX_SHEET_THREADS = Runtime.getRuntime().availableProcessors();
 
     private final PathResolver pathResolver;
     private final ObjectMapper objectMapper;
+    private final MappingConfigService mappingConfigService;
 
-    public ExcelFileProcessor(PathResolver pathResolver, ObjectMapper objectMapper) {
+    public ExcelFileProcessor(PathResolver pathResolver, ObjectMapper objectMapper,
+                              MappingConfigService mappingConfigService) {
         this.pathResolver = pathResolver;
         this.objectMapper = objectMapper;
+        this.mappingConfigService = mappingConfigService;
     }
 
     @Override
@@ -54,6 +82,15 @@ public class ExcelFileProcessor implements FileProcessor, StreamingFileProcessor
                     System.currentTimeMillis() + "_" +
                     metadata.getOriginalFilename() + ".tmp");
 
+            // Многолистовой импорт: листы читаются параллельно в один временный файл
+            ClientMappingConfig mappingConfig = getMappingConfig(metadata);
+            if (isMultiSheetImport(mappingConfig)) {
+                Map<String, Object> results = processSheets(filePath, metadata, tempFile,
+                        mappingConfig, progressCallback);
+                log.info("Final heap processFile: {}", getHeapSizeAsString());
+                return results;
+            }
+
             // Читаем заголовки
             List<String> headers = readHeaders(filePath, metadata);
 
@@ -136,6 +173,385 @@ public class ExcelFileProcessor implements FileProcessor, StreamingFileProcessor
     }
 
 
+    /**
+     * Обрабатывает несколько листов файла. Каждый лист читается в отдельном потоке
+     * в свой временный файл, после чего части объединяются в порядке листов.
+     */
+    private Map<String, Object> processSheets(Path filePath, FileMetadata metadata, Path tempFile,
+                                              ClientMappingConfig mappingConfig,
+                                              ProcessingProgressCallback progressCallback) throws Exception {
+        log.debug("Начало многолистовой обработки Excel файла: {}", metadata.getOriginalFilename());
+        List<SheetImportResult> sheets;
+
+        if (FileType.EXCEL.equals(metadata.getFileType())) {
+            try (OPCPackage pkg = OPCPackage.open(filePath.toFile(), PackageAccess.READ)) {
+                XSSFReader reader = new XSSFReader(pkg);
+                SharedStrings sharedStrings = reader.getSharedStringsTable();
+                StylesTable styles = reader.getStylesTable();
+
+                List<String> sheetNames = new ArrayList<>();
+                XSSFReader.SheetIterator iterator = (XSSFReader.SheetIterator) reader.getSheetsData();
+                while (iterator.hasNext()) {
+                    // Поток листа здесь не читается, нужно только имя листа
+                    iterator.next().close();
+                    sheetNames.add(iterator.getSheetName());
+                }
+
+                sheets = selectSheets(sheetNames, mappingConfig, tempFile);
+                readSheetsConcurrently(filePath, sheets, sharedStrings, styles, progressCallback);
+            }
+        } else {
+            // Для XLS потокового SAX-чтения нет, листы читаются последовательно из загруженной книги
+            try (InputStream is = Files.newInputStream(filePath);
+                 Workbook workbook = WorkbookFactory.create(is)) {
+                List<String> sheetNames = new ArrayList<>();
+                for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+                    sheetNames.add(workbook.getSheetName(i));
+                }
+                sheets = selectSheets(sheetNames, mappingConfig, tempFile);
+                for (SheetImportResult sheet : sheets) {
+                    if (sheet.isSuccess()) {
+                        readWorkbookSheet(workbook, sheet);
+                    }
+                }
+            }
+        }
+
+        mergeSheetParts(sheets, tempFile);
+
+        List<SheetImportResult> readSheets = sheets.stream()
+                .filter(SheetImportResult::isSuccess)
+                .toList();
+        if (readSheets.isEmpty()) {
+            throw new FileProcessingException("Не удалось прочитать ни одного листа: " +
+                    sheets.stream()
+                            .flatMap(sheet -> sheet.getErrors().stream())
+                            .collect(Collectors.joining("; ")));
+        }
+
+        Set<String> headers = new LinkedHashSet<>();
+        readSheets.forEach(sheet -> headers.addAll(sheet.getHeaders()));
+        long totalCount = readSheets.stream().mapToLong(SheetImportResult::getRowCount).sum();
+
+        log.info("Многолистовая обработка завершена. Листов: {}, строк: {}", sheets.size(), totalCount);
+
+        Map<String, Object> results = new HashMap<>();
+        results.put("headers", new ArrayList<>(headers));
+        results.put("totalCount", totalCount);
+        results.put("tempFilePath", tempFile);
+        results.put("sheetStats", sheets.stream().map(SheetImportResult::toStats).toList());
+        return results;
+    }
+
+    /**
+     * Определяет листы для импорта. Отсутствующие в файле листы из списка
+     * попадают в результат с ошибкой, чтобы она отразилась в статистике операции.
+     */
+    private List<SheetImportResult> selectSheets(List<String> sheetNames,
+                                                 ClientMappingConfig mappingConfig,
+                                                 Path tempFile) {
+        List<String> requested = parseSheetNames(mappingConfig.getSheetNames());
+        List<SheetImportResult> sheets = new ArrayList<>();
+
+        if (requested.isEmpty()) {
+            for (int i = 0; i < sheetNames.size(); i++) {
+                sheets.add(createSheetResult(i, sheetNames.get(i), tempFile));
+            }
+            return sheets;
+        }
+
+        for (String name : requested) {
+            int index = sheetNames.indexOf(name);
+            SheetImportResult sheet = createSheetResult(index, name, tempFile);
+            if (index < 0) {
+                sheet.getErrors().add("Лист не найден в файле: " + name);
+            }
+            sheets.add(sheet);
+        }
+        return sheets;
+    }
+
+    private SheetImportResult createSheetResult(int index, String name, Path tempFile) {
+        return SheetImportResult.builder()
+                .sheetIndex(index)
+                .sheetName(name)
+                .partFile(tempFile.resolveSibling(tempFile.getFileName() + ".sheet" + index))
+                .build();
+    }
+
+    private void readSheetsConcurrently(Path filePath,
+                                        List<SheetImportResult> sheets,
+                                        SharedStrings sharedStrings,
+                                        StylesTable styles,
+                                        ProcessingProgressCallback progressCallback) throws InterruptedException {
+        List<SheetImportResult> toRead = sheets.stream().filter(SheetImportResult::isSuccess).toList();
+        if (toRead.isEmpty()) {
+            return;
+        }
+
+        AtomicLong processedRows = new AtomicLong();
+        AtomicInteger completedSheets = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(MAX_SHEET_THREADS, toRead.size()));
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (SheetImportResult sheet : toRead) {
+                futures.add(executor.submit(() -> {
+                    readXlsxSheet(filePath, sheet, sharedStrings, styles, processedRows,
+                            completedSheets, toRead.size(), progressCallback);
+                    int completed = completedSheets.incrementAndGet();
+                    reportSheetProgress(processedRows.get(), completed, toRead.size(), progressCallback);
+                }));
+            }
+
+            // Сбой потока листа записывается в ошибки листа: его строки не попадут в импорт,
+            // а ошибка отразится в статистике операции
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    SheetImportResult sheet = toRead.get(i);
+                    log.error("Ошибка чтения листа '{}': {}", sheet.getSheetName(), e.getCause().getMessage(), e.getCause());
+                    sheet.getErrors().add("Ошибка чтения листа " + sheet.getSheetName() + ": " + e.getCause().getMessage());
+                }
+            }
+        } finally {
+            executor.shutdown();
+            if (!executor.awaitTermination(5, TimeUnit.MINUTES)) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Читает лист XLSX в потоковом режиме (SAX), не загружая книгу в память.
+     * Каждый поток открывает собственный пакет, таблицы строк и стилей общие.
+     */
+    private void readXlsxSheet(Path filePath,
+                               SheetImportResult sheet,
+                               SharedStrings sharedStrings,
+                               StylesTable styles,
+                               AtomicLong processedRows,
+                               AtomicInteger completedSheets,
+                               int totalSheets,
+                               ProcessingProgressCallback progressCallback) {
+        log.debug("Чтение листа '{}'", sheet.getSheetName());
+
+        try (OPCPackage pkg = OPCPackage.open(filePath.toFile(), PackageAccess.READ);
+             BufferedWriter writer = Files.newBufferedWriter(sheet.getPartFile(), StandardCharsets.UTF_8)) {
+
+            XSSFReader reader = new XSSFReader(pkg);
+            XSSFReader.SheetIterator iterator = (XSSFReader.SheetIterator) reader.getSheetsData();
+            int index = 0;
+            while (iterator.hasNext()) {
+                try (InputStream sheetStream = iterator.next()) {
+                    if (index++ != sheet.getSheetIndex()) {
+                        continue;
+                    }
+
+                    SheetRecordWriter recordWriter = new SheetRecordWriter(sheet, writer, count -> {
+                        long processed = processedRows.addAndGet(count);
+                        reportSheetProgress(processed, completedSheets.get(), totalSheets, progressCallback);
+                    });
+
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(
+                            styles, null, sharedStrings, recordWriter, new DataFormatter(), false));
+                    parser.parse(new InputSource(sheetStream));
+                    recordWriter.finish();
+                    break;
+                }
+            }
+
+            if (sheet.getHeaders() == null) {
+                sheet.getErrors().add("Лист пуст или не содержит заголовков: " + sheet.getSheetName());
+            }
+            log.debug("Лист '{}' прочитан, строк: {}", sheet.getSheetName(), sheet.getRowCount());
+
+        } catch (Exception e) {
+            log.error("Ошибка чтения листа '{}': {}", sheet.getSheetName(), e.getMessage(), e);
+            sheet.getErrors().add("Ошибка чтения листа " + sheet.getSheetName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Читает лист из загруженной книги (используется для XLS)
+     */
+    private void readWorkbookSheet(Workbook workbook, SheetImportResult sheet) {
+        try (BufferedWriter writer = Files.newBufferedWriter(sheet.getPartFile(), StandardCharsets.UTF_8)) {
+            Sheet workbookSheet = workbook.getSheetAt(sheet.getSheetIndex());
+            Row headerRow = workbookSheet.getRow(workbookSheet.getFirstRowNum());
+            if (headerRow == null) {
+                sheet.getErrors().add("Лист пуст или не содержит заголовков: " + sheet.getSheetName());
+                return;
+            }
+
+            List<String> headers = new ArrayList<>();
+            for (Cell cell : headerRow) {
+                headers.add(getCellValueAsString(cell));
+            }
+            sheet.setHeaders(headers);
+
+            List<Map<String, String>> currentBatch = new ArrayList<>(BATCH_SIZE);
+            for (int rowNum = headerRow.getRowNum() + 1; rowNum <= workbookSheet.getLastRowNum(); rowNum++) {
+                Row row = workbookSheet.getRow(rowNum);
+                if (row == null) {
+                    continue;
+                }
+                Map<String, String> record = new LinkedHashMap<>();
+                for (int colNum = 0; colNum < headers.size(); colNum++) {
+                    record.put(headers.get(colNum), getCellValueAsString(row.getCell(colNum)));
+                }
+                currentBatch.add(record);
+
+                if (currentBatch.size() >= BATCH_SIZE) {
+                    writeBatchToFile(currentBatch, writer);
+                    sheet.setRowCount(sheet.getRowCount() + currentBatch.size());
+                    currentBatch.clear();
+                }
+            }
+
+            if (!currentBatch.isEmpty()) {
+                writeBatchToFile(currentBatch, writer);
+                sheet.setRowCount(sheet.getRowCount() + currentBatch.size());
+            }
+        } catch (Exception e) {
+            log.error("Ошибка чтения листа '{}': {}", sheet.getSheetName(), e.getMessage(), e);
+            sheet.getErrors().add("Ошибка чтения листа " + sheet.getSheetName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Объединяет временные файлы листов в итоговый файл в порядке листов.
+     * Листы с ошибками не объединяются, чтобы частично прочитанный лист не попал в импорт
+     */
+    private void mergeSheetParts(List<SheetImportResult> sheets, Path tempFile) throws IOException {
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            for (SheetImportResult sheet : sheets) {
+                Path partFile = sheet.getPartFile();
+                if (!sheet.isSuccess()) {
+                    if (sheet.getRowCount() > 0) {
+                        log.warn("Лист '{}' прочитан с ошибкой, {} строк не импортируются",
+                                sheet.getSheetName(), sheet.getRowCount());
+                        sheet.setRowCount(0);
+                    }
+                } else if (partFile != null && Files.exists(partFile)) {
+                    Files.copy(partFile, out);
+                }
+            }
+        } finally {
+            sheets.forEach(sheet -> cleanupTempFile(sheet.getPartFile()));
+        }
+    }
+
+    private void reportSheetProgress(long processedRows, int completedSheets, int totalSheets,
+                                     ProcessingProgressCallback progressCallback) {
+        int progress = (int) (completedSheets * 100.0 / totalSheets);
+        synchronized (progressCallback) {
+            progressCallback.updateProgress(progress,
+                    String.format("Обработано строк: %d, листов: %d из %d",
+                            processedRows, completedSheets, totalSheets));
+        }
+    }
+
+    private ClientMappingConfig getMappingConfig(FileMetadata metadata) {
+        if (metadata.getMappingConfigId() == null) {
+            return null;
+        }
+        return mappingConfigService.getMappingById(metadata.getMappingConfigId());
+    }
+
+    private boolean isMultiSheetImport(ClientMappingConfig mappingConfig) {
+        return mappingConfig != null &&
+                (mappingConfig.isImportAllSheets() || !parseSheetNames(mappingConfig.getSheetNames()).isEmpty());
+    }
+
+    private List<String> parseSheetNames(String sheetNames) {
+        if (sheetNames == null || sheetNames.isBlank()) {
+            return List.of();
+        }
+        return Arrays.stream(sheetNames.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .distinct()
+                .toList();
+    }
+
+    /**
+     * Обработчик строк листа для SAX-чтения.
+     * Первая строка листа считается заголовком, остальные пишутся в файл листа в формате JSON.
+     */
+    private class SheetRecordWriter implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final SheetImportResult sheet;
+        private final BufferedWriter writer;
+        private final java.util.function.LongConsumer progressListener;
+        private final Map<Integer, String> currentValues = new HashMap<>();
+        private List<String> headers;
+        private int currentColumn = -1;
+        private long pendingRows;
+
+        SheetRecordWriter(SheetImportResult sheet, BufferedWriter writer,
+                          java.util.function.LongConsumer progressListener) {
+            this.sheet = sheet;
+            this.writer = writer;
+            this.progressListener = progressListener;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            currentValues.clear();
+            currentColumn = -1;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            currentColumn = cellReference != null ?
+                    new CellReference(cellReference).getCol() : currentColumn + 1;
+            currentValues.put(currentColumn, formattedValue != null ? formattedValue : "");
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (currentValues.isEmpty()) {
+                return;
+            }
+
+            if (headers == null) {
+                int lastColumn = Collections.max(currentValues.keySet());
+                headers = new ArrayList<>(lastColumn + 1);
+                for (int col = 0; col <= lastColumn; col++) {
+                    headers.add(currentValues.getOrDefault(col, ""));
+                }
+                sheet.setHeaders(headers);
+                return;
+            }
+
+            Map<String, String> record = new LinkedHashMap<>();
+            for (int col = 0; col < headers.size(); col++) {
+                record.put(headers.get(col), currentValues.getOrDefault(col, ""));
+            }
+
+            try {
+                writer.write(objectMapper.writeValueAsString(record));
+                writer.newLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            sheet.setRowCount(sheet.getRowCount() + 1);
+            if (++pendingRows >= BATCH_SIZE) {
+                finish();
+            }
+        }
+
+        void finish() {
+            if (pendingRows > 0) {
+                progressListener.accept(pendingRows);
+                pendingRows = 0;
+            }
+        }
+    }
+
     private void writeBatchToFile(List<Map<String, String>> batch, BufferedWriter writer) throws IOException {
         for (Map<String, String> record : batch) {
             writer.write(objectMapper.writeValueAsString(record));
@@ -0,0 +1,153 @@
+package by.zoomos_v2.service.file.input.profile;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Профиль колонок импортируемого файла, собираемый за один проход по строкам.
+ * Для каждой колонки считает долю пустых значений, минимальную и максимальную длину,
+ * долю числовых значений, приближенное число уникальных значений и самые частые значения.
+ * Не потокобезопасен: строки передаются из одного потока чтения.
+ */
+public class ColumnProfiler {
+
+    private static final int HLL_PRECISION = 12;
+    private static final int SKETCH_DEPTH = 4;
+    private static final int SKETCH_WIDTH = 1024;
+    private static final int TOP_K = 10;
+
+    private final Map<String, ColumnStats> columns = new LinkedHashMap<>();
+    private long rowCount;
+
+    public ColumnProfiler(List<String> headers) {
+        headers.forEach(header -> columns.put(header, new ColumnStats()));
+    }
+
+    /**
+     * Учитывает партию строк в профиле
+     */
+    public void accept(List<Map<String, String>> rows) {
+        for (Map<String, String> row : rows) {
+            rowCount++;
+            for (Map.Entry<String, ColumnStats> column : columns.entrySet()) {
+                column.getValue().add(row.get(column.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Формирует профиль для сохранения в метаданных операции
+     */
+    public Map<String, Object> buildProfile() {
+        Map<String, Object> profile = new LinkedHashMap<>();
+        columns.forEach((column, stats) -> profile.put(column, stats.toMap(rowCount)));
+        return profile;
+    }
+
+    /**
+     * 64-битный хеш строки: FNV-1a по байтам UTF-8 с финальным перемешиванием
+     */
+    static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Проверяет, что строка является числом (допускается знак, дробная часть через точку или запятую)
+     */
+    static boolean isNumeric(String value) {
+        int length = value.length();
+        int start = value.charAt(0) == '-' || value.charAt(0) == '+' ? 1 : 0;
+        if (start == length) {
+            return false;
+        }
+        boolean separatorSeen = false;
+        boolean digitSeen = false;
+        for (int i = start; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digitSeen = true;
+            } else if ((c == '.' || c == ',') && !separatorSeen) {
+                separatorSeen = true;
+            } else {
+                return false;
+            }
+        }
+        return digitSeen;
+    }
+
+    private static class ColumnStats {
+        private final HyperLogLog distinct = new HyperLogLog(HLL_PRECISION);
+        private final CountMinSketch frequencies = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+        private final Map<String, Long> topValues = new HashMap<>();
+        private long nullCount;
+        private long numericCount;
+        private int minLength = Integer.MAX_VALUE;
+        private int maxLength;
+
+        private void add(String rawValue) {
+            String value = rawValue != null ? rawValue.trim() : "";
+            if (value.isEmpty()) {
+                nullCount++;
+                return;
+            }
+
+            minLength = Math.min(minLength, value.length());
+            maxLength = Math.max(maxLength, value.length());
+            if (isNumeric(value)) {
+                numericCount++;
+            }
+
+            long hash = hash(value);
+            distinct.add(hash);
+            updateTopValues(value, frequencies.add(hash));
+        }
+
+        /**
+         * Поддерживает TOP_K кандидатов с наибольшей оценкой частоты
+         */
+        private void updateTopValues(String value, long estimate) {
+            if (topValues.containsKey(value) || topValues.size() < TOP_K) {
+                topValues.put(value, estimate);
+                return;
+            }
+
+            Map.Entry<String, Long> min = null;
+            for (Map.Entry<String, Long> entry : topValues.entrySet()) {
+                if (min == null || entry.getValue() < min.getValue()) {
+                    min = entry;
+                }
+            }
+            if (estimate > min.getValue()) {
+                topValues.remove(min.getKey());
+                topValues.put(value, estimate);
+            }
+        }
+
+        private Map<String, Object> toMap(long rowCount) {
+            long nonNullCount = rowCount - nullCount;
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("nullRatio", rowCount > 0 ? (double) nullCount / rowCount : 0.0);
+            stats.put("minLength", nonNullCount > 0 ? minLength : 0);
+            stats.put("maxLength", maxLength);
+            stats.put("numericRate", nonNullCount > 0 ? (double) numericCount / nonNullCount : 0.0);
+            stats.put("distinctEstimate", distinct.estimate());
+
+            List<Map<String, Object>> top = new ArrayList<>();
+            topValues.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .forEach(entry -> top.add(Map.of("value", entry.getKey(), "count", entry.getValue())));
+            stats.put("topValues", top);
+            return stats;
+        }
+    }
+}
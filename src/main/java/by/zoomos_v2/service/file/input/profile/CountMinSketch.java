@@ -0,0 +1,33 @@
+package by.zoomos_v2.service.file.input.profile;
+
+/**
+ * Приближенный подсчет частот значений (count-min sketch).
+ * Оценка частоты никогда не бывает меньше реальной, завышение ограничено шириной таблицы.
+ */
+public class CountMinSketch {
+
+    private final int depth;
+    private final int width;
+    private final long[][] table;
+
+    public CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        this.width = width;
+        this.table = new long[depth][width];
+    }
+
+    /**
+     * Увеличивает счетчик значения и возвращает новую оценку его частоты
+     */
+    public long add(long hash) {
+        long estimate = Long.MAX_VALUE;
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int row = 0; row < depth; row++) {
+            int column = Math.floorMod(h1 + row * h2, width);
+            long count = ++table[row][column];
+            estimate = Math.min(estimate, count);
+        }
+        return estimate;
+    }
+}
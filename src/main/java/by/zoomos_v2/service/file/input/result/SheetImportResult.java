@@ -0,0 +1,46 @@
+package by.zoomos_v2.service.file.input.result;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Результат чтения одного листа Excel файла при многолистовом импорте
+ */
+@Data
+@Builder
+public class SheetImportResult {
+
+    private int sheetIndex;
+    private String sheetName;
+    private List<String> headers;
+    private long rowCount;
+    @Builder.Default
+    private List<String> errors = new ArrayList<>();
+
+    /**
+     * Временный файл с записями листа, объединяется с остальными листами после чтения
+     */
+    private Path partFile;
+
+    public boolean isSuccess() {
+        return errors.isEmpty();
+    }
+
+    /**
+     * Формирует статистику листа для сохранения в метаданных операции
+     */
+    public Map<String, Object> toStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sheetIndex", sheetIndex);
+        stats.put("sheetName", sheetName);
+        stats.put("rowCount", rowCount);
+        stats.put("errors", errors);
+        return stats;
+    }
+}
@@ -5,17 +5,20 @@ import by.zoomos_v2.model.entity.CompetitorData;
 import by.zoomos_v2.model.entity.Product;
 import by.zoomos_v2.model.entity.RegionData;
 import by.zoomos_v2.model.enums.DataSourceType;
+import by.zoomos_v2.util.FieldValueConverter;
 import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.lang.reflect.Field;
-import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static by.zoomos_v2.constant.BatchSize.BATCH_SIZE_DATA_SAVE;
 import static by.zoomos_v2.util.HeapSize.getHeapSizeAsString;
@@ -29,6 +32,15 @@ public class DataPersistenceService {
     private static final String REGION_PREFIX = "regiondata";
     private static final String SITE_PREFIX = "competitordata";
     private static final int CLEAR_CONTEXT_FREQUENCY = 10;
+    private static final int MARK_REMOVED_BATCH_SIZE = 1000;
+    private static final String MARK_REMOVED_SQL =
+            "UPDATE products p SET removed_by_file_id = :fileId " +
+                    "WHERE p.client_id = :clientId " +
+                    "AND p.row_fingerprint IN (:fingerprints) " +
+                    "AND p.removed_by_file_id IS NULL " +
+                    "AND p.file_id <> :fileId " +
+                    "AND p.file_id IN (SELECT f.id FROM file_metadata f " +
+                    "WHERE f.shop_id = :clientId AND f.mapping_config_id = :mappingConfigId)";
 
     private final EntityManager entityManager;
 
@@ -46,24 +58,78 @@ public class DataPersistenceService {
      * @return Map с результатами обработки, содержащий количество успешных и неуспешных операций
      */
     public Map<String, Object> saveEntities(List<Map<String, String>> data, Long clientId, Map<String, String> mapping, Long fileId, DataSourceType dataSourceType) {
+        return saveEntities(data, clientId, mapping, fileId, dataSourceType, null);
+    }
+
+    /**
+     * Сохраняет список сущностей, группируя строки с одинаковым значением поля продукта.
+     * Для группы создается один продукт, данные конкурентов и регионов каждой строки
+     * добавляются к нему как дочерние записи. Группировка выполняется в пределах переданного списка.
+     *
+     * @param productGroupKey поле продукта для группировки (например, productId), null - без группировки
+     */
+    public Map<String, Object> saveEntities(List<Map<String, String>> data, Long clientId, Map<String, String> mapping,
+                                            Long fileId, DataSourceType dataSourceType, String productGroupKey) {
+        return saveEntities(data, clientId, mapping, fileId, dataSourceType, productGroupKey, null);
+    }
+
+    /**
+     * Сохраняет список сущностей и записывает в товары отпечатки исходных строк для дельта-импорта.
+     * Отпечаток записывается только без группировки: сгруппированный товар собран из нескольких строк
+     *
+     * @param fingerprintColumns колонки отпечатка строки, null - отпечатки не записываются
+     */
+    public Map<String, Object> saveEntities(List<Map<String, String>> data, Long clientId, Map<String, String> mapping,
+                                            Long fileId, DataSourceType dataSourceType, String productGroupKey,
+                                            List<String> fingerprintColumns) {
         int successCount = 0;
         int errorCount = 0;
+        int productCount = 0;
         List<String> errors = new ArrayList<>();
 
+        String groupColumn = productGroupKey != null && !productGroupKey.isBlank() ?
+                getMappedField(mapping, productGroupKey.trim(), PRODUCT_PREFIX) : null;
+        Map<String, ProductGroup> productGroups = new HashMap<>();
+
         try {
             List<Product> productBatch = new ArrayList<>();
+            int pendingRows = 0;
             int batchNumber = 0;
 
             for (Map<String, String> row : data) {
                 try {
+                    String groupValue = getGroupValue(row, groupColumn);
+                    ProductGroup group = groupValue != null ? productGroups.get(groupValue) : null;
+
+                    if (group != null) {
+                        boolean persisted = group.product.getId() != null;
+                        addRelatedEntities(group, row, clientId, mapping, persisted);
+                        if (persisted) {
+                            successCount++;
+                        } else {
+                            pendingRows++;
+                        }
+                        continue;
+                    }
+
                     Product product = createProduct(row, clientId, mapping, fileId, dataSourceType);
-                    addRelatedEntities(product, row, clientId, mapping);
+                    if (fingerprintColumns != null && groupColumn == null) {
+                        product.setRowFingerprint(RowFingerprintStore.fingerprint(row, fingerprintColumns));
+                    }
+                    group = new ProductGroup(product);
+                    addRelatedEntities(group, row, clientId, mapping, false);
+                    if (groupValue != null) {
+                        productGroups.put(groupValue, group);
+                    }
                     productBatch.add(product);
+                    pendingRows++;
 
                     if (productBatch.size() >= BATCH_SIZE_DATA_SAVE) {
                         saveBatch(productBatch);
-                        successCount += productBatch.size();
+                        successCount += pendingRows;
+                        productCount += productBatch.size();
                         productBatch.clear();
+                        pendingRows = 0;
                         batchNumber++;
 
                         if (batchNumber % CLEAR_CONTEXT_FREQUENCY == 0) {
@@ -77,9 +143,10 @@ public class DataPersistenceService {
             }
 
             // Сохраняем оставшиеся записи
-            if (!productBatch.isEmpty()) {
+            if (!productBatch.isEmpty() || pendingRows > 0) {
                 saveBatch(productBatch);
-                successCount += productBatch.size();
+                successCount += pendingRows;
+                productCount += productBatch.size();
             }
 
         } catch (Exception e) {
@@ -89,23 +156,109 @@ public class DataPersistenceService {
         }
 
         logProcessingResults(successCount, errorCount, data.size());
-        return buildResult(successCount, errorCount, data.size(), errors);
+        if (groupColumn != null) {
+            log.debug("Группировка по полю {}: {} строк сохранено в {} продуктов",
+                    productGroupKey, successCount, productCount);
+        }
+
+        Map<String, Object> result = buildResult(successCount, errorCount, data.size(), errors);
+        result.put("productCount", productCount);
+        return result;
+    }
+
+    /**
+     * Отмечает товары предыдущих файлов маппинга, строки которых отсутствуют в новом файле дельта-импорта.
+     * Товар находится по отпечатку строки, записанному при его сохранении
+     *
+     * @param clientId        идентификатор магазина
+     * @param mappingConfigId идентификатор маппинга
+     * @param fileId          файл дельта-импорта
+     * @param fingerprints    отпечатки исчезнувших строк
+     * @return количество отмеченных товаров
+     */
+    public int markRemovedRows(Long clientId, Long mappingConfigId, Long fileId, long[] fingerprints) {
+        int marked = 0;
+        for (int from = 0; from < fingerprints.length; from += MARK_REMOVED_BATCH_SIZE) {
+            List<Long> batch = Arrays.stream(fingerprints, from,
+                    Math.min(fingerprints.length, from + MARK_REMOVED_BATCH_SIZE)).boxed().toList();
+            marked += entityManager.createNativeQuery(MARK_REMOVED_SQL)
+                    .setParameter("fileId", fileId)
+                    .setParameter("clientId", clientId)
+                    .setParameter("mappingConfigId", mappingConfigId)
+                    .setParameter("fingerprints", batch)
+                    .executeUpdate();
+        }
+        log.debug("Отмечено {} товаров с исчезнувшими строками маппинга {}", marked, mappingConfigId);
+        return marked;
+    }
+
+    /**
+     * Возвращает значение колонки группировки для строки или null, если группировка не применяется
+     */
+    private String getGroupValue(Map<String, String> row, String groupColumn) {
+        if (groupColumn == null) {
+            return null;
+        }
+        String value = row.get(groupColumn);
+        return value != null && !value.trim().isEmpty() ? value.trim() : null;
     }
 
     /**
-     * Добавляет связанные сущности к продукту
+     * Добавляет связанные сущности к продукту.
+     * Повторяющиеся в группе данные регионов и конкурентов не дублируются.
+     * Если продукт уже сохранен, дочерние записи сохраняются напрямую.
      */
-    private void addRelatedEntities(Product product, Map<String, String> row, Long clientId, Map<String, String> mapping) {
-        if (hasEntityData(mapping, REGION_PREFIX)) {
+    private void addRelatedEntities(ProductGroup group, Map<String, String> row, Long clientId,
+                                    Map<String, String> mapping, boolean persistDirectly) {
+        Product product = group.product;
+
+        if (hasEntityData(mapping, REGION_PREFIX) &&
+                group.regionKeys.add(buildChildKey(row, mapping, REGION_PREFIX))) {
             RegionData regionData = createRegionData(row, clientId, mapping);
             regionData.setProduct(product);
-            product.getRegionDataList().add(regionData);
+            if (persistDirectly) {
+                entityManager.persist(regionData);
+            } else {
+                product.getRegionDataList().add(regionData);
+            }
         }
 
-        if (hasEntityData(mapping, SITE_PREFIX)) {
+        if (hasEntityData(mapping, SITE_PREFIX) &&
+                group.competitorKeys.add(buildChildKey(row, mapping, SITE_PREFIX))) {
             CompetitorData competitorData = createSiteData(row, clientId, mapping);
             competitorData.setProduct(product);
-            product.getCompetitorDataList().add(competitorData);
+            if (persistDirectly) {
+                entityManager.persist(competitorData);
+            } else {
+                product.getCompetitorDataList().add(competitorData);
+            }
+        }
+    }
+
+    /**
+     * Формирует ключ дочерней записи из значений колонок, сопоставленных полям сущности
+     */
+    private String buildChildKey(Map<String, String> row, Map<String, String> mapping, String prefix) {
+        StringBuilder key = new StringBuilder();
+        for (Map.Entry<String, String> entry : mapping.entrySet()) {
+            if (entry.getValue().startsWith(prefix)) {
+                String value = row.get(entry.getKey());
+                key.append(value != null ? value.trim() : "").append('\u0001');
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Продукт группы и ключи уже добавленных к нему дочерних записей
+     */
+    private static class ProductGroup {
+        private final Product product;
+        private final Set<String> regionKeys = new HashSet<>();
+        private final Set<String> competitorKeys = new HashSet<>();
+
+        private ProductGroup(Product product) {
+            this.product = product;
         }
     }
 
@@ -252,18 +405,7 @@ public class DataPersistenceService {
      * Преобразует строковое значение в соответствующий тип поля
      */
     private Object convertToFieldType(String value, Class<?> fieldType) {
-        try {
-            if (fieldType == String.class) return value;
-            if (fieldType == Long.class || fieldType == long.class) return Long.parseLong(value);
-            if (fieldType == Integer.class || fieldType == int.class) return Integer.parseInt(value);
-            if (fieldType == Double.class || fieldType == double.class) return Double.parseDouble(value);
-            if (fieldType == Boolean.class || fieldType == boolean.class) return Boolean.parseBoolean(value);
-            if (fieldType == BigDecimal.class) return new BigDecimal(value);
-            if (fieldType.isEnum()) return Enum.valueOf((Class<Enum>) fieldType, value);
-        } catch (Exception e) {
-            log.debug("Ошибка преобразования значения '{}' в тип {}", value, fieldType.getSimpleName());
-        }
-        return null;
+        return FieldValueConverter.convert(value, fieldType);
     }
 
     private boolean hasEntityData(Map<String, String> mapping, String prefix) {
@@ -0,0 +1,391 @@
+package by.zoomos_v2.service.file.input.service;
+
+import by.zoomos_v2.exception.FileProcessingException;
+import by.zoomos_v2.mapping.ClientMappingConfig;
+import by.zoomos_v2.model.FileMetadata;
+import by.zoomos_v2.model.FileType;
+import by.zoomos_v2.model.enums.OperationStatus;
+import by.zoomos_v2.model.enums.OperationType;
+import by.zoomos_v2.model.operation.ImportOperation;
+import by.zoomos_v2.repository.FileMetadataRepository;
+import by.zoomos_v2.repository.ImportOperationRepository;
+import by.zoomos_v2.service.file.BatchProcessingData;
+import by.zoomos_v2.service.file.input.processor.FileProcessor;
+import by.zoomos_v2.service.file.input.processor.FileProcessorFactory;
+import by.zoomos_v2.service.mapping.MappingConfigService;
+import by.zoomos_v2.service.statistics.OperationStatsService;
+import by.zoomos_v2.util.EntityRegistryService;
+import by.zoomos_v2.util.FieldValueConverter;
+import by.zoomos_v2.util.PathResolver;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Service;
+
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сервис проверки файла без импорта (dry-run).
+ * Читает файл тем же потоковым процессором, что и импорт, применяет маппинг и
+ * преобразование типов параллельно по партиям, но не сохраняет данные в БД.
+ * Результат сохраняется как операция типа VALIDATION.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class FileDryRunService {
+    private static final int CHUNK_SIZE = 1000;
+    private static final int PARALLEL_CHUNKS = Runtime.getRuntime().availableProcessors();
+    private static final int MAX_CONCURRENT_BATCHES = PARALLEL_CHUNKS * 2;
+    private static final int MAX_SAMPLES = 5;
+    private static final int SPEED_HISTORY_SIZE = 10;
+
+    private final FileMetadataRepository fileMetadataRepository;
+    private final ImportOperationRepository importOperationRepository;
+    private final FileProcessorFactory processorFactory;
+    private final MappingConfigService mappingConfigService;
+    private final EntityRegistryService entityRegistryService;
+    private final OperationStatsService operationStatsService;
+    private final PathResolver pathResolver;
+    private final ObjectMapper objectMapper;
+
+    @Qualifier("fileProcessingExecutor")
+    private final Executor fileProcessingExecutor;
+
+    /**
+     * Создает операцию проверки и ставит проверку файла в очередь пула обработки файлов.
+     * Отчет сохраняется в метаданных операции после завершения проверки
+     *
+     * @param fileId идентификатор загруженного файла
+     * @return созданная операция типа VALIDATION
+     */
+    public ImportOperation startDryRun(Long fileId) {
+        FileMetadata metadata = fileMetadataRepository.findById(fileId)
+                .orElseThrow(() -> new FileProcessingException("Файл не найден: " + fileId));
+
+        ImportOperation operation = operationStatsService.createOperation(createOperation(metadata));
+        try {
+            fileProcessingExecutor.execute(() -> dryRun(metadata, operation));
+        } catch (RuntimeException e) {
+            log.error("Не удалось поставить проверку файла {} в очередь: {}", fileId, e.getMessage(), e);
+            operation.addError(e.getMessage(), "VALIDATION_ERROR");
+            operation.setStatus(OperationStatus.FAILED);
+            operation.setEndTime(LocalDateTime.now());
+            operationStatsService.updateOperation(operation);
+            throw e;
+        }
+
+        log.info("Проверка файла {} поставлена в очередь. Операция: {}", fileId, operation.getId());
+        return operation;
+    }
+
+    /**
+     * Проверяет файл и сохраняет отчет в метаданных операции
+     */
+    private void dryRun(FileMetadata metadata, ImportOperation operation) {
+        Long fileId = metadata.getId();
+        long startTime = System.currentTimeMillis();
+        BatchProcessingData batchData = new BatchProcessingData();
+
+        try {
+            operation.setStatus(OperationStatus.IN_PROGRESS);
+            operationStatsService.updateOperation(operation);
+
+            Path filePath = pathResolver.getFilePath(metadata.getClientId(), metadata.getStoredFilename());
+            if (!Files.exists(filePath)) {
+                throw new FileProcessingException("Файл не найден по пути: " + filePath);
+            }
+
+            Map<String, String> columnsMapping = getColumnsMapping(metadata.getMappingConfigId());
+            List<ColumnCheck> checks = compileChecks(columnsMapping, operation);
+
+            Map<String, Object> results = setupFileProcessor(metadata).processFile(filePath, metadata,
+                    (progress, message) -> log.debug("Проверка файла {}: {}", fileId, message));
+
+            @SuppressWarnings("unchecked")
+            List<String> headers = (List<String>) results.get("headers");
+            batchData.setTempFilePath((Path) results.get("tempFilePath"));
+
+            ValidationStats stats = validateRows(batchData, checks);
+            long elapsedMs = System.currentTimeMillis() - startTime;
+
+            operation.setTotalRecords((int) stats.rows);
+            operation.setProcessedRecords((int) (stats.rows - stats.rowsWithErrors));
+            operation.setFailedRecords((int) stats.rowsWithErrors);
+            operation.setProcessingTimeSeconds(TimeUnit.MILLISECONDS.toSeconds(elapsedMs));
+            operation.getMetadata().put("validationReport",
+                    buildReport(stats, checks, headers, columnsMapping, metadata.getClientId(), elapsedMs));
+            operation.setStatus(stats.rowsWithErrors > 0 || !operation.getErrors().isEmpty() ?
+                    OperationStatus.PARTIAL_SUCCESS : OperationStatus.COMPLETED);
+
+            log.info("Проверка файла {} завершена за {} мс. Строк: {}, с ошибками: {}",
+                    metadata.getOriginalFilename(), elapsedMs, stats.rows, stats.rowsWithErrors);
+        } catch (Exception e) {
+            log.error("Ошибка при проверке файла {}: {}", fileId, e.getMessage(), e);
+            operation.addError(e.getMessage(), "VALIDATION_ERROR");
+            operation.setStatus(OperationStatus.FAILED);
+        } finally {
+            batchData.cleanup();
+        }
+
+        operation.setEndTime(LocalDateTime.now());
+        operationStatsService.updateOperation(operation);
+    }
+
+    private ImportOperation createOperation(FileMetadata metadata) {
+        ImportOperation operation = new ImportOperation();
+        operation.setFileId(metadata.getId());
+        operation.setClientId(metadata.getClientId());
+        operation.setProcessedRecords(0);
+        operation.setType(OperationType.VALIDATION);
+        operation.setSourceIdentifier(metadata.getOriginalFilename());
+        operation.setFileName(metadata.getOriginalFilename());
+        operation.setFileSize(metadata.getSize());
+        operation.setFileFormat(metadata.getFileType().name());
+        operation.setContentType(metadata.getContentType());
+        operation.setMappingConfigId(metadata.getMappingConfigId());
+        operation.setEncoding(metadata.getEncoding());
+        operation.setDelimiter(metadata.getDelimiter());
+        return operation;
+    }
+
+    private FileProcessor setupFileProcessor(FileMetadata metadata) {
+        FileProcessor processor = processorFactory.getProcessor(metadata);
+        if (metadata.getFileType() == FileType.CSV) {
+            processor.configure(Map.of(
+                    "encoding", metadata.getEncoding(),
+                    "delimiter", metadata.getDelimiter(),
+                    "batchSize", CHUNK_SIZE,
+                    "skipEmptyRows", true,
+                    "trimFields", true,
+                    "bufferSize", 8192,
+                    "parallelProcessing", true
+            ));
+        }
+        return processor;
+    }
+
+    private Map<String, String> getColumnsMapping(Long mappingConfigId) {
+        if (mappingConfigId == null) {
+            throw new FileProcessingException("Для файла не выбран маппинг");
+        }
+        try {
+            ClientMappingConfig mapping = mappingConfigService.getMappingById(mappingConfigId);
+            return objectMapper.readValue(mapping.getColumnsConfig(), new TypeReference<Map<String, String>>() {
+            });
+        } catch (Exception e) {
+            throw new FileProcessingException("Ошибка при получении конфигурации маппинга: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Заранее сопоставляет колонки файла с полями сущностей, чтобы не искать поле для каждой строки
+     */
+    private List<ColumnCheck> compileChecks(Map<String, String> columnsMapping, ImportOperation operation) {
+        List<ColumnCheck> checks = new ArrayList<>();
+        for (Map.Entry<String, String> entry : columnsMapping.entrySet()) {
+            Field field = resolveField(entry.getValue());
+            if (field == null) {
+                operation.addError("Поле " + entry.getValue() + " для колонки " + entry.getKey() +
+                        " не найдено", "MAPPING_ERROR");
+                continue;
+            }
+            checks.add(new ColumnCheck(entry.getKey(), entry.getValue(), field.getType()));
+        }
+        return checks;
+    }
+
+    private Field resolveField(String mappingKey) {
+        int dot = mappingKey.indexOf('.');
+        if (dot < 0) {
+            return null;
+        }
+        String prefix = mappingKey.substring(0, dot);
+        String fieldName = mappingKey.substring(dot + 1);
+        for (Class<?> entityClass : entityRegistryService.getEntityClasses()) {
+            if (entityClass.getSimpleName().toLowerCase().equals(prefix)) {
+                try {
+                    return entityClass.getDeclaredField(fieldName);
+                } catch (NoSuchFieldException e) {
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Проверяет строки временного файла параллельно по партиям
+     */
+    private ValidationStats validateRows(BatchProcessingData batchData, List<ColumnCheck> checks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLEL_CHUNKS);
+        List<Future<ValidationStats>> futures = new ArrayList<>();
+
+        // Ограничение числа партий в очереди: чтение файла не опережает проверку
+        Semaphore pendingBatches = new Semaphore(MAX_CONCURRENT_BATCHES);
+
+        try {
+            batchData.processTempFileInBatches(CHUNK_SIZE, batch -> {
+                try {
+                    pendingBatches.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new FileProcessingException("Проверка файла прервана", e);
+                }
+                futures.add(executor.submit(() -> {
+                    try {
+                        return validateBatch(batch, checks);
+                    } finally {
+                        pendingBatches.release();
+                    }
+                }));
+            });
+
+            ValidationStats total = new ValidationStats();
+            for (Future<ValidationStats> future : futures) {
+                total.merge(future.get());
+            }
+            return total;
+        } finally {
+            executor.shutdown();
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private ValidationStats validateBatch(List<Map<String, String>> batch, List<ColumnCheck> checks) {
+        ValidationStats stats = new ValidationStats();
+        for (Map<String, String> row : batch) {
+            boolean rowHasErrors = false;
+            for (ColumnCheck check : checks) {
+                ColumnStats columnStats = stats.columns.computeIfAbsent(check.column(), c -> new ColumnStats());
+                String value = row.get(check.column());
+                if (value == null || value.trim().isEmpty()) {
+                    columnStats.nullCount++;
+                    continue;
+                }
+                if (FieldValueConverter.convert(value.trim(), check.type()) == null) {
+                    columnStats.invalidCount++;
+                    if (columnStats.samples.size() < MAX_SAMPLES) {
+                        columnStats.samples.add(value);
+                    }
+                    stats.errorHistogram.merge("INVALID_" + check.type().getSimpleName().toUpperCase(),
+                            1L, Long::sum);
+                    rowHasErrors = true;
+                }
+            }
+            stats.rows++;
+            if (rowHasErrors) {
+                stats.rowsWithErrors++;
+            }
+        }
+        return stats;
+    }
+
+    private Map<String, Object> buildReport(ValidationStats stats,
+                                            List<ColumnCheck> checks,
+                                            List<String> headers,
+                                            Map<String, String> columnsMapping,
+                                            Long clientId,
+                                            long elapsedMs) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("rows", stats.rows);
+        report.put("rowsWithErrors", stats.rowsWithErrors);
+        report.put("validationTimeMs", elapsedMs);
+        report.put("errorHistogram", stats.errorHistogram);
+
+        List<Map<String, Object>> columns = new ArrayList<>();
+        for (ColumnCheck check : checks) {
+            ColumnStats columnStats = stats.columns.getOrDefault(check.column(), new ColumnStats());
+            Map<String, Object> column = new LinkedHashMap<>();
+            column.put("column", check.column());
+            column.put("targetField", check.targetField());
+            column.put("type", check.type().getSimpleName());
+            column.put("nullCount", columnStats.nullCount);
+            column.put("invalidCount", columnStats.invalidCount);
+            column.put("invalidSamples", columnStats.samples);
+            columns.add(column);
+        }
+        report.put("columns", columns);
+
+        // Колонки маппинга, которых нет в файле, и колонки файла без маппинга
+        List<String> fileHeaders = headers != null ? headers : List.of();
+        report.put("missingColumns", columnsMapping.keySet().stream()
+                .filter(column -> !fileHeaders.contains(column))
+                .toList());
+        report.put("unmappedColumns", fileHeaders.stream()
+                .filter(header -> !columnsMapping.containsKey(header))
+                .toList());
+
+        Double speed = getAverageImportSpeed(clientId);
+        if (speed != null) {
+            report.put("estimatedImportSeconds", Math.round(stats.rows / speed));
+        }
+        return report;
+    }
+
+    /**
+     * Средняя скорость последних импортов клиента, записей в секунду
+     */
+    private Double getAverageImportSpeed(Long clientId) {
+        OptionalDouble speed = importOperationRepository.findByClientIdOrderByStartTimeDesc(clientId).stream()
+                .filter(op -> op.getType() == OperationType.IMPORT)
+                .filter(op -> op.getProcessingSpeed() != null && op.getProcessingSpeed() > 0)
+                .limit(SPEED_HISTORY_SIZE)
+                .mapToDouble(ImportOperation::getProcessingSpeed)
+                .average();
+        return speed.isPresent() ? speed.getAsDouble() : null;
+    }
+
+    /**
+     * Колонка файла и тип поля сущности, в которое она сохраняется
+     */
+    private record ColumnCheck(String column, String targetField, Class<?> type) {
+    }
+
+    private static class ColumnStats {
+        private long nullCount;
+        private long invalidCount;
+        private final List<String> samples = new ArrayList<>();
+
+        private void merge(ColumnStats other) {
+            nullCount += other.nullCount;
+            invalidCount += other.invalidCount;
+            other.samples.stream()
+                    .limit(MAX_SAMPLES - samples.size())
+                    .forEach(samples::add);
+        }
+    }
+
+    /**
+     * Статистика проверки партии строк. Каждая партия собирает свою статистику,
+     * объединение выполняется после завершения всех задач
+     */
+    private static class ValidationStats {
+        private long rows;
+        private long rowsWithErrors;
+        private final Map<String, ColumnStats> columns = new HashMap<>();
+        private final Map<String, Long> errorHistogram = new TreeMap<>();
+
+        private void merge(ValidationStats other) {
+            rows += other.rows;
+            rowsWithErrors += other.rowsWithErrors;
+            other.columns.forEach((column, stats) ->
+                    columns.computeIfAbsent(column, c -> new ColumnStats()).merge(stats));
+            other.errorHistogram.forEach((key, count) -> errorHistogram.merge(key, count, Long::sum));
+        }
+    }
+}
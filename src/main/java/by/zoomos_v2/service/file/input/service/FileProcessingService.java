@@ -10,8 +10,11 @@ import by.zoomos_v2.model.enums.OperationType;
 import by.zoomos_v2.model.operation.ImportOperation;
 import by.zoomos_v2.repository.FileMetadataRepository;
 import by.zoomos_v2.service.file.BatchProcessingData;
+import by.zoomos_v2.service.file.export.service.ExportCacheService;
+import by.zoomos_v2.service.file.export.service.TaskValidationService;
 import by.zoomos_v2.service.file.input.processor.FileProcessor;
 import by.zoomos_v2.service.file.input.processor.FileProcessorFactory;
+import by.zoomos_v2.service.file.input.profile.ColumnProfiler;
 import by.zoomos_v2.service.mapping.MappingConfigService;
 import by.zoomos_v2.service.statistics.OperationProgressTracker;
 import by.zoomos_v2.service.statistics.OperationStateManager;
@@ -37,6 +40,7 @@ import java.nio.file.Path;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -66,6 +70,9 @@ public class FileProcessingService {
     private final OperationProgressTracker progressTracker;
     private final OperationStateManager operationStateManager;
     private final PlatformTransactionManager transactionManager;
+    private final RowFingerprintStore rowFingerprintStore;
+    private final ExportCacheService exportCacheService;
+    private final TaskValidationService taskValidationService;
 
     @Qualifier("fileProcessingExecutor")
     private final Executor fileProcessingExecutor;
@@ -204,6 +211,14 @@ public class FileProcessingService {
                 );
                 DataSourceType dataSourceType = mappingConfig.getDataSource();
 
+                // Дельта-импорт: строки без изменений относительно предыдущего файла пропускаются
+                RowFingerprintStore.DeltaSession deltaSession = mappingConfig.isDeltaImport() ?
+                        rowFingerprintStore.startSession(metadata.getClientId(), mappingConfig.getId(),
+                                new ArrayList<>(columnsMapping.keySet())) : null;
+
+                // Профиль колонок собирается в том же проходе по временному файлу
+                ColumnProfiler columnProfiler = new ColumnProfiler(batchData.getHeaders());
+
                 // Создаем пул для параллельной обработки
                 ExecutorService chunkExecutor = Executors.newFixedThreadPool(PARALLEL_CHUNKS);
                 List<CompletableFuture<Void>> futures = new ArrayList<>();
@@ -212,12 +227,22 @@ public class FileProcessingService {
                     // Обрабатываем файл партиями
                     final AtomicInteger processedCount = new AtomicInteger(0);
                     final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+                    // Ошибки строк и сброса батча saveEntities возвращает в результате, а не исключением
+                    final AtomicBoolean rowsFailed = new AtomicBoolean(false);
 
-                    batchData.processTempFileInBatches(CHUNK_SIZE, batch -> {
+                    batchData.processTempFileInBatches(CHUNK_SIZE, fileBatch -> {
                         if (operationStateManager.isCancelled(operation.getId())) {
                             return;
                         }
 
+                        columnProfiler.accept(fileBatch);
+
+                        List<Map<String, String>> batch = deltaSession != null ?
+                                deltaSession.filterChanged(fileBatch) : fileBatch;
+                        if (batch.isEmpty()) {
+                            return;
+                        }
+
                         try {
                             // Получаем разрешение от семафора перед запуском задачи
                             concurrentProcessingLimiter.acquire();
@@ -232,9 +257,14 @@ public class FileProcessingService {
                                                     metadata.getClientId(),
                                                     columnsMapping,
                                                     metadata.getId(),
-                                                    dataSourceType
+                                                    dataSourceType,
+                                                    mappingConfig.getProductGroupKey(),
+                                                    deltaSession != null ? deltaSession.getColumns() : null
                                             );
 
+                                            if (hasSaveErrors(results)) {
+                                                rowsFailed.set(true);
+                                            }
                                             synchronized (operation) {
                                                 updateOperationProgress(operation, results, operation.getTotalRecords());
                                             }
@@ -276,13 +306,36 @@ public class FileProcessingService {
                         errors.add("Ошибка при обработке: " + e.getMessage());
                     }
 
-                    // Обновляем операцию с ошибками (если они есть)
-                    if (!errors.isEmpty()) {
+                    // Обновляем операцию с ошибками (если они есть) и профилем колонок
+                    transactionTemplate.execute(status -> {
+                        errors.forEach(error -> operation.addError(error, "DATA_SAVE_ERROR"));
+                        operation.getMetadata().put("columnProfile", columnProfiler.buildProfile());
+                        operationStatsService.updateOperation(operation);
+                        return null;
+                    });
+
+                    // Отпечатки сохраняются только если сохранены все строки: отпечаток несохраненной строки
+                    // навсегда исключил бы ее из следующих дельта-импортов
+                    if (deltaSession != null && (!errors.isEmpty() || rowsFailed.get())) {
+                        log.warn("Отпечатки строк для маппинга {} не обновлены: при сохранении были ошибки",
+                                mappingConfig.getId());
+                    }
+                    if (deltaSession != null && errors.isEmpty() && !rowsFailed.get()
+                            && !operationStateManager.isCancelled(operation.getId())) {
+                        Map<String, Object> deltaStats = new HashMap<>(deltaSession.complete());
                         transactionTemplate.execute(status -> {
-                            errors.forEach(error -> operation.addError(error, "DATA_SAVE_ERROR"));
+                            // Товары прежних файлов, строк которых нет в новом файле, отмечаются удаленными
+                            deltaStats.put("markedProducts", dataPersistenceService.markRemovedRows(
+                                    metadata.getClientId(), mappingConfig.getId(), metadata.getId(),
+                                    deltaSession.getRemovedFingerprints()));
+                            operation.getMetadata().put("deltaImport", deltaStats);
+                            operation.incrementProcessedRecords(deltaSession.getSkippedRows());
                             operationStatsService.updateOperation(operation);
                             return null;
                         });
+                        // Отпечатки сохраняются после отметки удаленных строк: при ошибке отметки
+                        // следующий импорт снова найдет эти строки исчезнувшими
+                        deltaSession.save();
                     }
 
                     return true;
@@ -293,6 +346,13 @@ public class FileProcessingService {
                         log.warn("Принудительное завершение пула потоков после тайм-аута");
                         chunkExecutor.shutdownNow();
                     }
+
+                    // Данные файла изменились: готовые экспорты с ним больше не актуальны
+                    exportCacheService.invalidateFile(metadata.getId());
+                    if (dataSourceType == DataSourceType.TASK) {
+                        exportCacheService.invalidateSharedData();
+                        taskValidationService.clearValidationCacheForFile(metadata.getId());
+                    }
                 }
             } catch (Exception e) {
                 log.error("Ошибка при сохранении данных: {}", e.getMessage(), e);
@@ -321,6 +381,13 @@ public class FileProcessingService {
         }
     }
 
+    /**
+     * Проверяет, сообщил ли результат сохранения батча об ошибках строк или сброса в БД
+     */
+    private boolean hasSaveErrors(Map<String, Object> results) {
+        return (Integer) results.getOrDefault("errorCount", 0) > 0 || results.containsKey("errors");
+    }
+
     /**
      * Получает метаданные файла.
      * Требует транзакцию.
@@ -489,6 +556,21 @@ public class FileProcessingService {
         operation.setTotalRecords(totalCount.intValue());
         log.debug("Установлено общее количество записей: {}", totalCount);
 
+        // Статистика по листам при многолистовом импорте Excel
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> sheetStats = (List<Map<String, Object>>) results.get("sheetStats");
+        if (sheetStats != null) {
+            operation.getMetadata().put("sheetStats", sheetStats);
+            sheetStats.forEach(sheet -> {
+                @SuppressWarnings("unchecked")
+                List<String> sheetErrors = (List<String>) sheet.get("errors");
+                if (sheetErrors != null) {
+                    sheetErrors.forEach(error -> operation.addError(error, "SHEET_ERROR"));
+                }
+            });
+            log.debug("Обработано листов: {}", sheetStats.size());
+        }
+
         // Проверяем размер временного файла
         try {
             long fileSize = Files.size(tempPath);
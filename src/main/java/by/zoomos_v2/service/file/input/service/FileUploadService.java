@@ -5,6 +5,8 @@ import by.zoomos_v2.model.FileMetadata;
 import by.zoomos_v2.model.FileType;
 import by.zoomos_v2.model.TextFileParameters;
 import by.zoomos_v2.repository.FileMetadataRepository;
+import by.zoomos_v2.service.file.export.service.ExportCacheService;
+import by.zoomos_v2.service.file.export.service.TaskValidationService;
 import by.zoomos_v2.util.FileTypeDetector;
 import by.zoomos_v2.util.FileUtils;
 import by.zoomos_v2.util.PathResolver;
@@ -13,6 +15,8 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.util.List;
@@ -32,6 +36,9 @@ public class FileUploadService {
     private final FileValidationService fileValidationService;
     private final FileUtils fileUtils;
     private final PathResolver pathResolver;
+    private final ExportCacheService exportCacheService;
+    private final TaskValidationService taskValidationService;
+    private final RowFingerprintStore rowFingerprintStore;
 
     /**
      * Загружает файл и создает метаданные.
@@ -148,8 +155,17 @@ public class FileUploadService {
             // Удаляем физический файл
             fileUtils.deleteFile(pathResolver.getFilePath(clientId, metadata.getStoredFilename()));
 
+            // Ключи заданий из файла больше не должны использоваться при экспорте
+            List<String> taskNumbers = taskValidationService.clearValidationCacheForFile(fileId);
+
+            // Строк удаленного файла больше нет, дельта-импорт по маппингу начинается заново
+            if (metadata.getMappingConfigId() != null) {
+                rowFingerprintStore.deleteStore(clientId, metadata.getMappingConfigId());
+            }
+
             // Удаляем метаданные
             fileMetadataRepository.delete(metadata);
+            invalidateCachesAfterCommit(fileId, taskNumbers);
 
             log.info("Файл {} успешно удален", metadata.getOriginalFilename());
         } catch (Exception e) {
@@ -157,4 +173,32 @@ public class FileUploadService {
             throw new FileProcessingException("Ошибка при удалении файла", e);
         }
     }
+
+    /**
+     * Сбрасывает кэши экспорта удаленного файла после фиксации транзакции,
+     * чтобы экспорт, начатый до фиксации, не закэшировал старые данные.
+     * Удаление файла задания меняет общие данные, от которых зависят экспорты других файлов
+     *
+     * @param fileId      идентификатор удаленного файла
+     * @param taskNumbers номера заданий удаленного файла
+     */
+    private void invalidateCachesAfterCommit(Long fileId, List<String> taskNumbers) {
+        Runnable invalidate = () -> {
+            exportCacheService.invalidateFile(fileId);
+            if (!taskNumbers.isEmpty()) {
+                taskNumbers.forEach(taskValidationService::clearValidationCache);
+                exportCacheService.invalidateSharedData();
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidate.run();
+                }
+            });
+        } else {
+            invalidate.run();
+        }
+    }
 }
\ No newline at end of file
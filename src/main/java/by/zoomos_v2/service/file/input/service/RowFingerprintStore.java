@@ -0,0 +1,227 @@
+package by.zoomos_v2.service.file.input.service;
+
+import by.zoomos_v2.util.PathResolver;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Хранилище отпечатков строк для дельта-импорта.
+ * Для каждого магазина и маппинга хранит отсортированный массив 64-битных хешей строк
+ * последнего импортированного файла. Сравнение выполняется в памяти, без запросов к БД.
+ * Хранилище удаляется вместе с любым файлом маппинга: строки удаленного файла больше
+ * не существуют, и следующий файл импортируется полностью
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RowFingerprintStore {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final PathResolver pathResolver;
+
+    /**
+     * Начинает сессию дельта-импорта, загружая отпечатки предыдущего файла
+     *
+     * @param clientId        идентификатор магазина
+     * @param mappingConfigId идентификатор маппинга
+     * @param columns         колонки файла, участвующие в маппинге
+     */
+    public DeltaSession startSession(Long clientId, Long mappingConfigId, List<String> columns) {
+        Path storePath = getStorePath(clientId, mappingConfigId);
+        long[] previous = load(storePath);
+        log.debug("Загружено {} отпечатков предыдущего файла для маппинга {}", previous.length, mappingConfigId);
+        return new DeltaSession(storePath, previous, columns.stream().sorted().toList());
+    }
+
+    /**
+     * Удаляет отпечатки маппинга магазина
+     *
+     * @param clientId        идентификатор магазина
+     * @param mappingConfigId идентификатор маппинга
+     */
+    public void deleteStore(Long clientId, Long mappingConfigId) throws IOException {
+        if (Files.deleteIfExists(getStorePath(clientId, mappingConfigId))) {
+            log.info("Удалены отпечатки строк маппинга {} магазина {}", mappingConfigId, clientId);
+        }
+    }
+
+    private Path getStorePath(Long clientId, Long mappingConfigId) {
+        return pathResolver.getClientDirectory(clientId)
+                .resolve("fingerprints")
+                .resolve("mapping_" + mappingConfigId + ".bin");
+    }
+
+    private long[] load(Path storePath) {
+        if (!Files.exists(storePath)) {
+            return new long[0];
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(storePath)))) {
+            int size = in.readInt();
+            long[] fingerprints = new long[size];
+            for (int i = 0; i < size; i++) {
+                fingerprints[i] = in.readLong();
+            }
+            return fingerprints;
+        } catch (IOException e) {
+            log.warn("Не удалось прочитать отпечатки {}, файл будет импортирован полностью: {}",
+                    storePath, e.getMessage());
+            return new long[0];
+        }
+    }
+
+    private void save(Path storePath, long[] fingerprints) throws IOException {
+        Files.createDirectories(storePath.getParent());
+        Path tempPath = storePath.resolveSibling(storePath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+            out.writeInt(fingerprints.length);
+            for (long fingerprint : fingerprints) {
+                out.writeLong(fingerprint);
+            }
+        }
+        Files.move(tempPath, storePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Вычисляет отпечаток строки (FNV-1a 64) по значениям указанных колонок
+     */
+    static long fingerprint(Map<String, String> row, List<String> columns) {
+        long hash = FNV_OFFSET_BASIS;
+        for (String column : columns) {
+            String value = row.get(column);
+            if (value != null) {
+                String trimmed = value.trim();
+                for (int i = 0; i < trimmed.length(); i++) {
+                    hash ^= trimmed.charAt(i);
+                    hash *= FNV_PRIME;
+                }
+            }
+            // Разделитель значений, чтобы "ab","c" и "a","bc" давали разные отпечатки
+            hash ^= 0x1F;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Сессия дельта-импорта одного файла.
+     * Фильтрация батчей выполняется последовательно потоком чтения временного файла.
+     */
+    public class DeltaSession {
+        private final Path storePath;
+        private final long[] previous;
+        private final List<String> columns;
+        private long[] current = new long[1024];
+        private long[] removed = new long[0];
+        private long[] completed;
+        private int currentSize;
+        private int changedRows;
+        private int skippedRows;
+
+        private DeltaSession(Path storePath, long[] previous, List<String> columns) {
+            this.storePath = storePath;
+            this.previous = previous;
+            this.columns = columns;
+        }
+
+        /**
+         * Возвращает только новые и измененные строки батча
+         */
+        public List<Map<String, String>> filterChanged(List<Map<String, String>> batch) {
+            List<Map<String, String>> changed = new ArrayList<>(batch.size());
+            for (Map<String, String> row : batch) {
+                long fingerprint = fingerprint(row, columns);
+                addCurrent(fingerprint);
+                if (Arrays.binarySearch(previous, fingerprint) >= 0) {
+                    skippedRows++;
+                } else {
+                    changed.add(row);
+                    changedRows++;
+                }
+            }
+            return changed;
+        }
+
+        private void addCurrent(long fingerprint) {
+            if (currentSize == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[currentSize++] = fingerprint;
+        }
+
+        /**
+         * Завершает сравнение с предыдущим файлом и возвращает статистику дельта-импорта.
+         * Отпечатки строк, исчезнувших из файла, доступны через getRemovedFingerprints.
+         * Хранилище не меняется до вызова save
+         */
+        public Map<String, Object> complete() {
+            long[] fingerprints = Arrays.copyOf(current, currentSize);
+            Arrays.sort(fingerprints);
+            completed = Arrays.stream(fingerprints).distinct().toArray();
+
+            long[] vanished = new long[previous.length];
+            int removedRows = 0;
+            for (long fingerprint : previous) {
+                if (Arrays.binarySearch(completed, fingerprint) < 0) {
+                    vanished[removedRows++] = fingerprint;
+                }
+            }
+            removed = Arrays.copyOf(vanished, removedRows);
+
+            log.info("Дельта-импорт: новых/измененных строк {}, без изменений {}, удалено {}",
+                    changedRows, skippedRows, removedRows);
+
+            return Map.of(
+                    "changedRows", changedRows,
+                    "skippedRows", skippedRows,
+                    "removedRows", removedRows,
+                    "previousRows", previous.length
+            );
+        }
+
+        /**
+         * Сохраняет отпечатки текущего файла (после complete).
+         * Вызывается, когда строки файла сохранены и удаленные строки отмечены: иначе следующий
+         * дельта-импорт считал бы их уже обработанными
+         */
+        public void save() throws IOException {
+            if (completed == null) {
+                throw new IllegalStateException("Сессия дельта-импорта не завершена");
+            }
+            RowFingerprintStore.this.save(storePath, completed);
+        }
+
+        /**
+         * Колонки отпечатка в порядке хеширования
+         */
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        /**
+         * Отпечатки строк предыдущего файла, отсутствующих в текущем (после complete)
+         */
+        public long[] getRemovedFingerprints() {
+            return removed;
+        }
+
+        public int getSkippedRows() {
+            return skippedRows;
+        }
+    }
+}
@@ -3,6 +3,7 @@ package by.zoomos_v2.service.file.metadata;
 import by.zoomos_v2.DTO.FileInfoDTO;
 import by.zoomos_v2.model.FileMetadata;
 import by.zoomos_v2.model.enums.OperationStatus;
+import by.zoomos_v2.model.enums.OperationType;
 import by.zoomos_v2.model.operation.BaseOperation;
 import by.zoomos_v2.model.operation.ImportOperation;
 import by.zoomos_v2.repository.FileMetadataRepository;
@@ -60,7 +61,7 @@ public class FileMetadataService {
         return files.stream()
                 .map(file -> {
                     Optional<ImportOperation> operation = importOperationRepository
-                            .findByFileId(file.getId());
+                            .findFirstByFileIdAndTypeOrderByStartTimeDesc(file.getId(), OperationType.IMPORT);
 
                     return FileInfoDTO.builder()
                             .id(file.getId())
@@ -89,12 +89,14 @@ public class ExportFieldConfigService {
     }
 
     @Transactional
-    public ExportConfig createConfig(Long clientId, String name, List<EntityField> fields, String configDescription, ProcessingStrategyType strategyType) {
+    public ExportConfig createConfig(Long clientId, String name, List<EntityField> fields, String configDescription,
+                                     ProcessingStrategyType strategyType, List<ProcessingStrategyType> strategyChain) {
         ExportConfig config = new ExportConfig();
         config.setClient(clientRepository.getReferenceById(clientId));
         config.setDefault(false);
         config.setName(name);
         config.setStrategyType(strategyType);
+        config.setStrategyChainTypes(strategyChain);
 
         List<ExportField> exportFields = new ArrayList<>();
         for (EntityField entityField : fields) {
@@ -183,7 +185,8 @@ public class ExportFieldConfigService {
                                    String configName,
                                    Long mappingId,
                                    String configDescription,
-                                   ProcessingStrategyType strategyType) {
+                                   ProcessingStrategyType strategyType,
+                                   List<ProcessingStrategyType> strategyChain) {
         ExportConfig config = getConfigById(mappingId);
 
         // Проверка принадлежности конфигурации клиенту
@@ -197,6 +200,7 @@ public class ExportFieldConfigService {
         }
         config.setDescription(configDescription);
         config.setStrategyType(strategyType);
+        config.setStrategyChainTypes(strategyChain);
 
         // Обновляем все поля
         Map<String, EntityField> updateMap = fields.stream()
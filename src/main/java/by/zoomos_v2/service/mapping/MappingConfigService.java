@@ -77,6 +77,10 @@ public class MappingConfigService {
         newMapping.setColumnsConfig(mapping.getColumnsConfig());
         newMapping.setActive(mapping.isActive());
         newMapping.setDataSource(mapping.getDataSource());
+        newMapping.setImportAllSheets(mapping.isImportAllSheets());
+        newMapping.setSheetNames(mapping.getSheetNames());
+        newMapping.setProductGroupKey(mapping.getProductGroupKey());
+        newMapping.setDeltaImport(mapping.isDeltaImport());
 
         // Сохраняем маппинг
         ClientMappingConfig savedMapping = mappingRepository.save(newMapping);
@@ -126,6 +130,10 @@ public class MappingConfigService {
         existingMapping.setColumnsConfig(mapping.getColumnsConfig());
         existingMapping.setActive(mapping.isActive());
         existingMapping.setDataSource(mapping.getDataSource());
+        existingMapping.setImportAllSheets(mapping.isImportAllSheets());
+        existingMapping.setSheetNames(mapping.getSheetNames());
+        existingMapping.setProductGroupKey(mapping.getProductGroupKey());
+        existingMapping.setDeltaImport(mapping.isDeltaImport());
 
         return mappingRepository.save(existingMapping);
     }
@@ -88,7 +88,9 @@ public class OperationStatsService {
     }
 
     public ImportStatsSummaryDTO getImportStatsSummary(Long clientId) {
-        List<ImportOperation> imports = importOperationRepository.findByClientIdOrderByStartTimeDesc(clientId);
+        List<ImportOperation> imports = importOperationRepository.findByClientIdOrderByStartTimeDesc(clientId).stream()
+                .filter(op -> op.getType() == OperationType.IMPORT)
+                .toList();
 
         return ImportStatsSummaryDTO.builder()
                 .totalFiles((long) imports.size())
@@ -207,7 +209,14 @@ public class OperationStatsService {
 
 
     public Optional<ImportOperation> findOperationByFileId(Long fileId) {
-        return importOperationRepository.findByFileId(fileId);
+        return importOperationRepository.findFirstByFileIdAndTypeOrderByStartTimeDesc(fileId, OperationType.IMPORT);
+    }
+
+    /**
+     * Находит последнюю проверку файла без импорта
+     */
+    public Optional<ImportOperation> findValidationByFileId(Long fileId) {
+        return importOperationRepository.findFirstByFileIdAndTypeOrderByStartTimeDesc(fileId, OperationType.VALIDATION);
     }
 
     /**
@@ -0,0 +1,36 @@
+package by.zoomos_v2.util;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+import java.math.BigDecimal;
+
+/**
+ * Преобразование строковых значений файла в типы полей сущностей.
+ * Используется при сохранении данных и при проверке файла без импорта
+ */
+@Slf4j
+@UtilityClass
+public class FieldValueConverter {
+
+    /**
+     * Преобразует строковое значение в соответствующий тип поля
+     *
+     * @return значение нужного типа или null, если преобразование невозможно
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static Object convert(String value, Class<?> fieldType) {
+        try {
+            if (fieldType == String.class) return value;
+            if (fieldType == Long.class || fieldType == long.class) return Long.parseLong(value);
+            if (fieldType == Integer.class || fieldType == int.class) return Integer.parseInt(value);
+            if (fieldType == Double.class || fieldType == double.class) return Double.parseDouble(value);
+            if (fieldType == Boolean.class || fieldType == boolean.class) return Boolean.parseBoolean(value);
+            if (fieldType == BigDecimal.class) return new BigDecimal(value);
+            if (fieldType.isEnum()) return Enum.valueOf((Class<Enum>) fieldType, value);
+        } catch (Exception e) {
+            log.debug("Ошибка преобразования значения '{}' в тип {}", value, fieldType.getSimpleName());
+        }
+        return null;
+    }
+}
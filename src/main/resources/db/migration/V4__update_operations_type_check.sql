@@ -0,0 +1,12 @@
+-- Добавляем тип операции VALIDATION (проверка файла без импорта)
+ALTER TABLE IF EXISTS operations DROP CONSTRAINT IF EXISTS operations_type_check;
+
+ALTER TABLE IF EXISTS operations
+    ADD CONSTRAINT operations_type_check
+        CHECK ((type::text = ANY ((ARRAY[
+            'IMPORT'::character varying,
+            'EXPORT'::character varying,
+            'VALIDATION'::character varying,
+            'UTILITY'::character varying,
+            'OTHER'::character varying
+            ])::text[])));
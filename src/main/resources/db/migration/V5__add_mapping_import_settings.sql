@@ -0,0 +1,14 @@
+-- Настройки импорта маппинга: листы Excel, группировка строк и дельта-импорт
+-- Колонки-флаги создаются со значением по умолчанию, чтобы не ломать существующие маппинги
+
+ALTER TABLE IF EXISTS client_mapping_config
+    ADD COLUMN IF NOT EXISTS import_all_sheets BOOLEAN DEFAULT false NOT NULL;
+
+ALTER TABLE IF EXISTS client_mapping_config
+    ADD COLUMN IF NOT EXISTS sheet_names VARCHAR(1000);
+
+ALTER TABLE IF EXISTS client_mapping_config
+    ADD COLUMN IF NOT EXISTS product_group_key VARCHAR(255);
+
+ALTER TABLE IF EXISTS client_mapping_config
+    ADD COLUMN IF NOT EXISTS delta_import BOOLEAN DEFAULT false NOT NULL;
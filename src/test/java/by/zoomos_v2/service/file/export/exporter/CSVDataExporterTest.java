@@ -0,0 +1,138 @@
+package by.zoomos_v2.service.file.export.exporter;
+
+import by.zoomos_v2.model.ExportConfig;
+import by.zoomos_v2.model.ExportField;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Вывод CSV должен совпадать побайтно с CSVPrinter и CSVFormat.DEFAULT,
+ * которыми выгрузка формировалась раньше
+ */
+class CSVDataExporterTest {
+    private static final Charset CHARSET = Charset.forName(CSVDataExporter.DEFAULT_CHARSET);
+    private static final String[] HEADERS = {"#id", " Название ", "", "Цена;руб"};
+    private static final Object[] VALUES = {
+            "", null, "#12", "!a", "  padded  ", "a;b", "q\"uote", "line\nbreak", "cr\rx",
+            "Привет", "€ вне cp1251", "x", 12L, 3.5, "\"start", "tab\tinside", "end#", "$dollar", " #after trim"
+    };
+
+    @Test
+    void streamingWriterMatchesCsvPrinter() throws IOException {
+        List<Map<String, Object>> rows = rows(25_000);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (ExportRowWriter writer = new CSVDataExporter().openRowWriter(actual, config())) {
+            for (Map<String, Object> row : rows) {
+                writer.writeRow(row);
+            }
+            writer.finish();
+            assertEquals(rows.size(), writer.getRowCount());
+        }
+
+        assertArrayEquals(printWithCsvPrinter(rows, true), actual.toByteArray());
+    }
+
+    @Test
+    void sequentialWriterMatchesCsvPrinter() throws IOException {
+        List<Map<String, Object>> rows = rows(VALUES.length * 2);
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (CSVDataExporter.CsvRowWriter writer = new CSVDataExporter.CsvRowWriter(
+                Channels.newChannel(actual), CHARSET, ';', sourceFields(), false)) {
+            for (Map<String, Object> row : rows) {
+                writer.writeRow(row);
+            }
+            writer.finish();
+        }
+
+        assertArrayEquals(printWithCsvPrinter(rows, false), actual.toByteArray());
+    }
+
+    @Test
+    void quotesEmptyFirstValueAndLeadingCommentChars() throws IOException {
+        Map<String, Object> row = new HashMap<>();
+        row.put("f0", "");
+        row.put("f1", "x");
+        row.put("f2", "#12");
+        row.put("f3", "!a");
+
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (CSVDataExporter.CsvRowWriter writer = new CSVDataExporter.CsvRowWriter(
+                Channels.newChannel(actual), CHARSET, ';', sourceFields(), false)) {
+            writer.writeRow(row);
+            writer.finish();
+        }
+
+        assertEquals("\"\";x;\"#12\";\"!a\"\r\n", actual.toString(CHARSET));
+    }
+
+    private static byte[] printWithCsvPrinter(List<Map<String, Object>> rows, boolean withHeader) throws IOException {
+        CSVFormat.Builder format = CSVFormat.DEFAULT.builder().setDelimiter(';');
+        if (withHeader) {
+            format.setHeader(HEADERS);
+        }
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (CSVPrinter printer = new CSVPrinter(new OutputStreamWriter(expected, CHARSET), format.build())) {
+            for (Map<String, Object> row : rows) {
+                List<String> values = new ArrayList<>();
+                for (String field : sourceFields()) {
+                    Object value = row.get(field);
+                    values.add(value == null ? "" : value.toString().trim());
+                }
+                printer.printRecord(values);
+            }
+        }
+        return expected.toByteArray();
+    }
+
+    private static List<Map<String, Object>> rows(int count) {
+        List<Map<String, Object>> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, Object> row = new HashMap<>();
+            for (int column = 0; column < HEADERS.length; column++) {
+                row.put("f" + column, VALUES[(i + column * 5) % VALUES.length]);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static String[] sourceFields() {
+        String[] fields = new String[HEADERS.length];
+        Arrays.setAll(fields, column -> "f" + column);
+        return fields;
+    }
+
+    private static ExportConfig config() {
+        ExportConfig config = new ExportConfig();
+        List<ExportField> fields = new ArrayList<>();
+        for (int column = 0; column < HEADERS.length; column++) {
+            ExportField field = new ExportField();
+            field.setSourceField("f" + column);
+            field.setDisplayName(HEADERS[column]);
+            field.setPosition(column);
+            field.setEnabled(true);
+            fields.add(field);
+        }
+        config.setFields(fields);
+        config.setParam("delimiter", ";");
+        return config;
+    }
+}
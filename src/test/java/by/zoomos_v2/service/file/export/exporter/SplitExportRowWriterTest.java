@@ -0,0 +1,79 @@
+package by.zoomos_v2.service.file.export.exporter;
+
+import by.zoomos_v2.model.ExportConfig;
+import by.zoomos_v2.model.ExportField;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SplitExportRowWriterTest {
+    private static final long MAX_BYTES = 1024 * 1024;
+    // Лимит проверяется после строки, части CSV пишутся через буфер записи на 64 КБ
+    private static final long WRITE_BUFFER = 64 * 1024;
+
+    @Test
+    void csvPartsStayWithinSizeLimit() throws IOException {
+        int rows = 200_000;
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        List<Map<String, Object>> splitPoints;
+        try (SplitExportRowWriter writer = new SplitExportRowWriter(new CSVDataExporter(), config(), archive,
+                "export.csv", new ExportSplitPolicy(ExportSplitPolicy.EXCEL_MAX_DATA_ROWS, null, MAX_BYTES))) {
+            for (int i = 0; i < rows; i++) {
+                writer.writeRow(Map.of("sku", "SKU-" + i, "name", "Товар номер " + i + " с описанием"));
+            }
+            writer.finish();
+            assertEquals(rows, writer.getRowCount());
+            splitPoints = writer.getSplitPoints();
+        }
+
+        assertTrue(splitPoints.size() > 5, "Выгрузка должна быть разбита на несколько частей");
+        long dataRows = 0;
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                byte[] part = zip.readAllBytes();
+                String name = entry.getName();
+                assertTrue(part.length <= MAX_BYTES + WRITE_BUFFER,
+                        () -> "Часть " + name + " размером " + part.length + " байт превышает лимит");
+                dataRows += countLines(part) - 1;
+            }
+        }
+        assertEquals(rows, dataRows);
+    }
+
+    private static long countLines(byte[] part) {
+        long lines = 0;
+        for (byte b : part) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static ExportConfig config() {
+        ExportConfig config = new ExportConfig();
+        ExportField sku = new ExportField();
+        sku.setSourceField("sku");
+        sku.setDisplayName("Артикул");
+        sku.setPosition(0);
+        sku.setEnabled(true);
+        ExportField name = new ExportField();
+        name.setSourceField("name");
+        name.setDisplayName("Название");
+        name.setPosition(1);
+        name.setEnabled(true);
+        config.setFields(List.of(sku, name));
+        config.setParam("delimiter", ";");
+        return config;
+    }
+}
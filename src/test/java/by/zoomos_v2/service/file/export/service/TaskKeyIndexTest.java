@@ -0,0 +1,112 @@
+package by.zoomos_v2.service.file.export.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ключи задания приходят из БД уже в верхнем регистре (UPPER в запросе),
+ * искомые значения приводятся к нему при сравнении
+ */
+class TaskKeyIndexTest {
+
+    @Test
+    void matchesTrimmedUpperCasedValue() {
+        TaskKeyIndex index = TaskKeyIndex.of(List.of("ЕВРООПТ", "GREEN-1", "ALMI"));
+
+        assertTrue(index.contains("Евроопт"));
+        assertTrue(index.contains("  green-1\t"));
+        assertTrue(index.contains(new StringBuilder(" almi ")));
+        assertFalse(index.contains("green 1"));
+        assertFalse(index.contains("GREEN-"));
+        assertFalse(index.contains("GREEN-12"));
+    }
+
+    @Test
+    void keysAreStoredAsIs() {
+        TaskKeyIndex index = TaskKeyIndex.of(List.of("lower"));
+
+        assertFalse(index.contains("lower"));
+        assertFalse(index.contains("LOWER"));
+    }
+
+    @Test
+    void comparesNonBmpCodePoints() {
+        // В UTF-16 суррогатные пары меньше символов U+E000..U+FFFF, по кодовым точкам - больше
+        List<String> keys = List.of("Ａ", "", "😀", "A𝐀B", "𐐀");
+        TaskKeyIndex index = TaskKeyIndex.of(keys);
+
+        assertEquals(keys.size(), index.size());
+        keys.forEach(key -> assertTrue(index.contains(key), key));
+        // U+10428 (строчная буква Deseret) приводится к U+10400
+        assertTrue(index.contains(" 𐐨 "));
+        assertTrue(index.contains("a𝐀b"));
+        assertFalse(index.contains("😁"));
+        assertFalse(index.contains("\uD83D"));
+    }
+
+    @Test
+    void emptyIndexContainsNothing() {
+        TaskKeyIndex index = TaskKeyIndex.of(List.of());
+
+        assertTrue(index.isEmpty());
+        assertEquals(0, index.size());
+        assertFalse(index.contains(""));
+        assertFalse(index.contains(null));
+        assertFalse(index.contains("ANY"));
+    }
+
+    @Test
+    void emptyKeyMatchesBlankAndNullValues() {
+        TaskKeyIndex index = TaskKeyIndex.of(Arrays.asList("", null, "X"));
+
+        assertEquals(2, index.size());
+        assertTrue(index.contains(null));
+        assertTrue(index.contains("   "));
+    }
+
+    @Test
+    void duplicateKeysAreStoredOnce() {
+        TaskKeyIndex index = TaskKeyIndex.of(List.of("A", "B", "A", "B", "A"));
+
+        assertEquals(2, index.size());
+        assertTrue(index.contains("a"));
+        assertTrue(index.contains("b"));
+    }
+
+    @Test
+    void rejectsAbsentKeysOfLargeIndex() {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            keys.add("SHOP-" + i);
+        }
+        TaskKeyIndex index = TaskKeyIndex.of(keys);
+
+        for (int i = 0; i < 50_000; i++) {
+            assertTrue(index.contains("shop-" + i));
+        }
+        // Отсутствующие ключи отсекаются фильтром Блума или двоичным поиском, ложных совпадений нет
+        for (int i = 50_000; i < 150_000; i++) {
+            assertFalse(index.contains("SHOP-" + i));
+        }
+        assertFalse(index.contains("SHOP"));
+        assertFalse(index.contains("SHOP-0 1"));
+    }
+
+    @Test
+    void smallIndexUsesMinimalBloomFilter() {
+        TaskKeyIndex index = TaskKeyIndex.of(List.of("ONE"));
+
+        assertTrue(index.contains("one"));
+        for (int i = 0; i < 1_000; i++) {
+            assertFalse(index.contains("TWO-" + i));
+        }
+        assertEquals(3 + 2 * Integer.BYTES + Long.BYTES, index.memoryBytes());
+    }
+}
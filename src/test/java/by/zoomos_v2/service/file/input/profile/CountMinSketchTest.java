@@ -0,0 +1,58 @@
+package by.zoomos_v2.service.file.input.profile;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Оценки частот в размерах профиля колонок (4 x 1024)
+ */
+class CountMinSketchTest {
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 1024;
+
+    @Test
+    void countsSingleValueExactly() {
+        CountMinSketch sketch = new CountMinSketch(DEPTH, WIDTH);
+        long hash = ColumnProfiler.hash("Минск");
+        for (int i = 1; i <= 50; i++) {
+            assertEquals(i, sketch.add(hash));
+        }
+    }
+
+    @Test
+    void neverUnderestimatesAndBoundsOverestimate() {
+        CountMinSketch sketch = new CountMinSketch(DEPTH, WIDTH);
+        Map<String, Long> actual = new HashMap<>();
+        Map<String, Long> estimates = new HashMap<>();
+        int total = 50_000;
+        for (int i = 0; i < total; i++) {
+            // Несколько частых значений на фоне большого числа редких
+            String value = i % 10 == 0 ? "top-" + (i % 50) : "rare-" + i;
+            long count = actual.merge(value, 1L, Long::sum);
+            long estimate = sketch.add(ColumnProfiler.hash(value));
+            assertTrue(estimate >= count, () -> "Оценка " + estimate + " меньше реальной частоты " + count);
+            estimates.put(value, estimate);
+        }
+
+        // Завышение ограничено e * N / width с вероятностью 1 - e^-depth
+        long bound = Math.round(Math.E * total / WIDTH);
+        for (int top = 0; top < 50; top += 10) {
+            String value = "top-" + top;
+            assertTrue(estimates.get(value) - actual.get(value) <= bound,
+                    () -> "Завышение частоты " + value + " больше " + bound);
+        }
+    }
+
+    @Test
+    void negativeHashesMapIntoTable() {
+        CountMinSketch sketch = new CountMinSketch(DEPTH, WIDTH);
+        assertEquals(1, sketch.add(Long.MIN_VALUE));
+        assertEquals(1, sketch.add(-1L));
+        assertEquals(2, sketch.add(-1L));
+    }
+}
@@ -0,0 +1,59 @@
+package by.zoomos_v2.service.file.input.profile;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Оценка уникальных значений с точностью профиля колонок (2^12 регистров, погрешность около 1.6%)
+ */
+class HyperLogLogTest {
+    private static final int PRECISION = 12;
+
+    @Test
+    void emptySketchEstimatesZero() {
+        assertEquals(0, new HyperLogLog(PRECISION).estimate());
+    }
+
+    @Test
+    void repeatedValueIsCountedOnce() {
+        HyperLogLog hll = new HyperLogLog(PRECISION);
+        for (int i = 0; i < 10_000; i++) {
+            hll.add(ColumnProfiler.hash("одно значение"));
+        }
+        assertEquals(1, hll.estimate());
+    }
+
+    @Test
+    void smallCardinalityUsesLinearCounting() {
+        HyperLogLog hll = new HyperLogLog(PRECISION);
+        for (int i = 0; i < 100; i++) {
+            hll.add(ColumnProfiler.hash("value-" + i));
+            hll.add(ColumnProfiler.hash("value-" + i));
+        }
+        assertEquals(100, hll.estimate(), 2);
+    }
+
+    @Test
+    void largeCardinalityStaysWithinErrorBound() {
+        int distinct = 200_000;
+        HyperLogLog hll = new HyperLogLog(PRECISION);
+        for (int i = 0; i < distinct; i++) {
+            hll.add(ColumnProfiler.hash("sku-" + i));
+        }
+        long estimate = hll.estimate();
+        assertTrue(Math.abs(estimate - distinct) < distinct * 0.05,
+                () -> "Оценка " + estimate + " отличается от " + distinct + " больше чем на 5%");
+    }
+
+    @Test
+    void extremeHashesDoNotOverflowRegisters() {
+        HyperLogLog hll = new HyperLogLog(PRECISION);
+        hll.add(0L);
+        hll.add(-1L);
+        hll.add(Long.MIN_VALUE);
+        hll.add(Long.MAX_VALUE);
+        assertEquals(4, hll.estimate());
+    }
+}
@@ -0,0 +1,166 @@
+package by.zoomos_v2.service.file.input.service;
+
+import by.zoomos_v2.util.PathResolver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RowFingerprintStoreTest {
+    private static final Long CLIENT_ID = 1L;
+    private static final Long MAPPING_ID = 7L;
+    private static final List<String> COLUMNS = List.of("sku", "price");
+
+    @TempDir
+    Path clientDirectory;
+
+    private RowFingerprintStore store;
+
+    @BeforeEach
+    void setUp() {
+        PathResolver pathResolver = mock(PathResolver.class);
+        when(pathResolver.getClientDirectory(CLIENT_ID)).thenReturn(clientDirectory);
+        store = new RowFingerprintStore(pathResolver);
+    }
+
+    @Test
+    void firstImportPassesAllRows() throws IOException {
+        RowFingerprintStore.DeltaSession session = store.startSession(CLIENT_ID, MAPPING_ID, COLUMNS);
+        List<Map<String, String>> batch = List.of(row("A-1", "10"), row("A-2", "20"));
+
+        assertEquals(batch, session.filterChanged(batch));
+
+        Map<String, Object> stats = session.complete();
+        assertEquals(2, stats.get("changedRows"));
+        assertEquals(0, stats.get("skippedRows"));
+        assertEquals(0, stats.get("previousRows"));
+        assertEquals(0, session.getRemovedFingerprints().length);
+        assertFalse(Files.exists(storePath()));
+
+        session.save();
+        assertTrue(Files.exists(storePath()));
+    }
+
+    @Test
+    void unsavedSessionKeepsPreviousFingerprints() throws IOException {
+        importRows(List.of(row("A-1", "10")));
+
+        RowFingerprintStore.DeltaSession failed = store.startSession(CLIENT_ID, MAPPING_ID, COLUMNS);
+        failed.filterChanged(List.of(row("A-2", "20")));
+        assertEquals(1, failed.complete().get("removedRows"));
+
+        // Отметка удаленных строк не удалась, отпечатки не сохранены: строка снова считается исчезнувшей
+        RowFingerprintStore.DeltaSession retry = store.startSession(CLIENT_ID, MAPPING_ID, COLUMNS);
+        retry.filterChanged(List.of(row("A-2", "20")));
+        assertEquals(1, retry.complete().get("removedRows"));
+    }
+
+    @Test
+    void saveRequiresCompletedSession() {
+        RowFingerprintStore.DeltaSession session = store.startSession(CLIENT_ID, MAPPING_ID, COLUMNS);
+        assertThrows(IllegalStateException.class, session::save);
+    }
+
+    @Test
+    void secondImportPassesOnlyChangedRowsAndReportsRemoved() throws IOException {
+        importRows(List.of(row("A-1", "10"), row("A-2", "20"), row("A-3", "30")));
+
+        RowFingerprintStore.DeltaSession session = store.startSession(CLIENT_ID, MAPPING_ID, COLUMNS);
+        List<Map<String, String>> changed = session.filterChanged(
+                List.of(row("A-1", "10"), row("A-2", "25"), row("A-4", "40")));
+
+        assertEquals(List.of(row("A-2", "25"), row("A-4", "40")), changed);
+        assertEquals(1, session.getSkippedRows());
+
+        Map<String, Object> stats = session.complete();
+        assertEquals(2, stats.get("removedRows"));
+        assertEquals(3, stats.get("previousRows"));
+
+        long[] expectedRemoved = {
+                RowFingerprintStore.fingerprint(row("A-2", "20"), session.getColumns()),
+                RowFingerprintStore.fingerprint(row("A-3", "30"), session.getColumns())
+        };
+        Arrays.sort(expectedRemoved);
+        assertArrayEquals(expectedRemoved, session.getRemovedFingerprints());
+    }
+
+    @Test
+    void fingerprintIgnoresSurroundingSpacesAndColumnOrder() throws IOException {
+        importRows(List.of(row("A-1", "10")));
+
+        RowFingerprintStore.DeltaSession session = store.startSession(CLIENT_ID, MAPPING_ID, List.of("price", "sku"));
+        assertTrue(session.filterChanged(List.of(row("  A-1 ", "10\t"))).isEmpty());
+        assertEquals(List.of("price", "sku"), session.getColumns());
+    }
+
+    @Test
+    void fingerprintSeparatesAdjacentValues() {
+        List<String> columns = List.of("a", "b");
+        assertNotEquals(
+                RowFingerprintStore.fingerprint(Map.of("a", "ab", "b", "c"), columns),
+                RowFingerprintStore.fingerprint(Map.of("a", "a", "b", "bc"), columns));
+        assertNotEquals(
+                RowFingerprintStore.fingerprint(Map.of("a", "x"), columns),
+                RowFingerprintStore.fingerprint(Map.of("b", "x"), columns));
+    }
+
+    @Test
+    void duplicateRowsAreStoredOnce() throws IOException {
+        importRows(List.of(row("A-1", "10"), row("A-1", "10"), row("A-2", "20")));
+
+        RowFingerprintStore.DeltaSession session = store.startSession(CLIENT_ID, MAPPING_ID, COLUMNS);
+        session.filterChanged(List.of());
+        assertEquals(2, session.complete().get("previousRows"));
+    }
+
+    @Test
+    void deletedStoreStartsFullImport() throws IOException {
+        importRows(List.of(row("A-1", "10")));
+
+        store.deleteStore(CLIENT_ID, MAPPING_ID);
+        assertFalse(Files.exists(storePath()));
+
+        RowFingerprintStore.DeltaSession session = store.startSession(CLIENT_ID, MAPPING_ID, COLUMNS);
+        assertEquals(1, session.filterChanged(List.of(row("A-1", "10"))).size());
+    }
+
+    @Test
+    void unreadableStoreStartsFullImport() throws IOException {
+        Files.createDirectories(storePath().getParent());
+        Files.write(storePath(), new byte[]{0, 0, 0, 5, 1, 2});
+
+        RowFingerprintStore.DeltaSession session = store.startSession(CLIENT_ID, MAPPING_ID, COLUMNS);
+        assertEquals(1, session.filterChanged(List.of(row("A-1", "10"))).size());
+        assertEquals(0, session.complete().get("previousRows"));
+    }
+
+    private void importRows(List<Map<String, String>> rows) throws IOException {
+        RowFingerprintStore.DeltaSession session = store.startSession(CLIENT_ID, MAPPING_ID, COLUMNS);
+        session.filterChanged(rows);
+        session.complete();
+        session.save();
+    }
+
+    private Path storePath() {
+        return clientDirectory.resolve("fingerprints").resolve("mapping_" + MAPPING_ID + ".bin");
+    }
+
+    private static Map<String, String> row(String sku, String price) {
+        return Map.of("sku", sku, "price", price);
+    }
+}